@@ -9,8 +9,16 @@ import android.view.View
 import android.widget.ImageView
 import android.widget.RelativeLayout
 import android.widget.TextView
+import androidx.lifecycle.findViewTreeLifecycleOwner
+import androidx.lifecycle.lifecycleScope
 import io.sourcesync.sdk.ui.divkit.ActivationView
+import io.sourcesync.sdk.ui.utils.AssetEnvelopes
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 import org.json.JSONException
+import org.json.JSONObject
+import java.io.FileNotFoundException
+import java.io.IOException
 
 class ActivationViewLayout @JvmOverloads constructor(
     context: Context,
@@ -23,6 +31,7 @@ class ActivationViewLayout @JvmOverloads constructor(
     private var backButton: ImageView? = null
     private var countDownTimer: CountDownTimer? = null
     private var isActivationViewSetup = false
+    private var loadJob: Job? = null
 
     // Callback for back button click
     var onBackClickListener: (() -> Unit)? = null
@@ -127,38 +136,52 @@ class ActivationViewLayout @JvmOverloads constructor(
     private fun setupActivationView() {
         Log.d("ActivationViewLayout", "Setting up activation view...")
 
-        try {
-            activationView = ActivationView(context)
-
-            // Create layout parameters for top-right positioning
-            val layoutParams = LayoutParams(
-                LayoutParams.WRAP_CONTENT,
-                LayoutParams.WRAP_CONTENT
-            ).apply {
-                addRule(ALIGN_PARENT_TOP)
-                addRule(ALIGN_PARENT_END)
-                topMargin = 16.dpToPx()
-                rightMargin = 16.dpToPx()
-            }
+        val view = ActivationView(context)
+        activationView = view
+
+        // Create layout parameters for top-right positioning
+        val layoutParams = LayoutParams(
+            LayoutParams.WRAP_CONTENT,
+            LayoutParams.WRAP_CONTENT
+        ).apply {
+            addRule(ALIGN_PARENT_TOP)
+            addRule(ALIGN_PARENT_END)
+            topMargin = 16.dpToPx()
+            rightMargin = 16.dpToPx()
+        }
 
-            addView(activationView, layoutParams)
+        addView(view, layoutParams)
 
-            val previewTemplate = TemplateLoader.loadTemplate(context, "div_preview.json")
-            val detailsTemplate = TemplateLoader.loadTemplate(context, "div_details.json")
+        // The envelopes are read on a background thread; the timer keeps ticking meanwhile
+        loadJob = findViewTreeLifecycleOwner()?.lifecycleScope?.launch {
+            try {
+                val previewTemplate = loadEnvelope("div_preview.json")
+                val detailsTemplate = loadEnvelope("div_details.json")
 
-            activationView?.showPreview(previewTemplate) { _: View? ->
-                Log.d("ActivationViewLayout", "Preview clicked, showing details")
-                activationView?.showDetail(detailsTemplate, widthPercentage = 0.55f) {
-                    Log.d("ActivationViewLayout", "Details action triggered, hiding details")
-                    activationView?.hideDetails()
+                view.showPreview(previewTemplate) { _: View? ->
+                    Log.d("ActivationViewLayout", "Preview clicked, showing details")
+                    view.showDetail(detailsTemplate, widthPercentage = 0.55f) {
+                        Log.d("ActivationViewLayout", "Details action triggered, hiding details")
+                        view.hideDetails()
+                    }
                 }
-            }
+                view.prepareDetail(detailsTemplate, widthPercentage = 0.55f)
 
-            Log.d("ActivationViewLayout", "Activation view setup completed")
+                Log.d("ActivationViewLayout", "Activation view setup completed")
+            } catch (e: IOException) {
+                Log.e("ActivationViewLayout", "Could not read activation envelopes", e)
+            } catch (e: JSONException) {
+                Log.e("ActivationViewLayout", "Error setting up activation view", e)
+            }
+        }
+    }
 
-        } catch (e: JSONException) {
-            Log.e("ActivationViewLayout", "Error setting up activation view", e)
-            throw RuntimeException(e)
+    // A gzip-compressed ".json.gz" asset is used when there is no ".json" one
+    private suspend fun loadEnvelope(fileName: String): JSONObject {
+        return try {
+            AssetEnvelopes.load(context, fileName)
+        } catch (e: FileNotFoundException) {
+            AssetEnvelopes.load(context, "$fileName.gz")
         }
     }
 
@@ -170,6 +193,8 @@ class ActivationViewLayout @JvmOverloads constructor(
 
     private fun hideActivationView() {
         Log.d("ActivationViewLayout", "Hiding activation view...")
+        loadJob?.cancel()
+        loadJob = null
         activationView?.let {
             removeView(it)
             Log.d("ActivationViewLayout", "Activation view removed from layout")
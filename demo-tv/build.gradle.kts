@@ -5,12 +5,12 @@ plugins {
 
 android {
     namespace = "io.sourcesync.sdk.ui.demo_tv"
-    compileSdk = 34
+    compileSdk = 35
 
     defaultConfig {
         applicationId = "io.sourcesync.sdk.ui.demo_tv"
         minSdk = 24
-        targetSdk = 34
+        targetSdk = 35
         versionCode = 1
         versionName = "1.0"
 
@@ -32,9 +32,17 @@ android {
     kotlinOptions {
         jvmTarget = "11"
     }
+
+    // Same demo envelopes as the mobile demo
+    sourceSets {
+        getByName("main") {
+            assets.srcDir("../demo-mobile/src/main/assets")
+        }
+    }
 }
 
 dependencies {
+    implementation(project(":sourcesync-sdk-ui"))
     implementation(libs.androidx.leanback)
     implementation(libs.androidx.core.ktx)
     implementation("com.github.bumptech.glide:glide:4.16.0")
@@ -36,6 +36,15 @@ import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.transition.Transition;
 
+import io.sourcesync.sdk.ui.divkit.ActivationCardPresenter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Timer;
@@ -49,6 +58,9 @@ public class MainFragment extends BrowseSupportFragment {
     private static final int GRID_ITEM_HEIGHT = 200;
     private static final int NUM_ROWS = 6;
     private static final int NUM_COLS = 15;
+    private static final int ACTIVATION_CARD_WIDTH = 700;
+    private static final int ACTIVATION_CARD_HEIGHT = 200;
+    private static final String[] ACTIVATION_ASSETS = {"div_preview.json"};
 
     private final Handler mHandler = new Handler(Looper.myLooper());
     private Drawable mDefaultBackground;
@@ -56,6 +68,7 @@ public class MainFragment extends BrowseSupportFragment {
     private Timer mBackgroundTimer;
     private String mBackgroundUri;
     private BackgroundManager mBackgroundManager;
+    private ActivationCardPresenter mActivationPresenter;
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
@@ -78,12 +91,16 @@ public class MainFragment extends BrowseSupportFragment {
             Log.d(TAG, "onDestroy: " + mBackgroundTimer.toString());
             mBackgroundTimer.cancel();
         }
+        if (null != mActivationPresenter) {
+            mActivationPresenter.release();
+        }
     }
 
     private void loadRows() {
         List<Movie> list = MovieList.setupMovies();
 
-        ArrayObjectAdapter rowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+        ListRowPresenter listRowPresenter = new ListRowPresenter();
+        ArrayObjectAdapter rowsAdapter = new ArrayObjectAdapter(listRowPresenter);
         CardPresenter cardPresenter = new CardPresenter();
 
         int i;
@@ -99,6 +116,17 @@ public class MainFragment extends BrowseSupportFragment {
             rowsAdapter.add(new ListRow(header, listRowAdapter));
         }
 
+        mActivationPresenter = new ActivationCardPresenter(ACTIVATION_CARD_WIDTH, ACTIVATION_CARD_HEIGHT);
+        mActivationPresenter.applyTo(listRowPresenter);
+        ArrayObjectAdapter activationRowAdapter = new ArrayObjectAdapter(mActivationPresenter);
+        for (int j = 0; j < NUM_COLS; j++) {
+            JSONObject envelope = loadEnvelope(ACTIVATION_ASSETS[j % ACTIVATION_ASSETS.length]);
+            if (envelope != null) {
+                activationRowAdapter.add(envelope);
+            }
+        }
+        rowsAdapter.add(new ListRow(new HeaderItem(i++, "ACTIVATIONS"), activationRowAdapter));
+
         HeaderItem gridHeader = new HeaderItem(i, "PREFERENCES");
 
         GridItemPresenter mGridPresenter = new GridItemPresenter();
@@ -111,6 +139,22 @@ public class MainFragment extends BrowseSupportFragment {
         setAdapter(rowsAdapter);
     }
 
+    @Nullable
+    private JSONObject loadEnvelope(String fileName) {
+        try (InputStream inputStream = requireContext().getAssets().open(fileName)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new JSONObject(bytes.toString(StandardCharsets.UTF_8.name()));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not load activation envelope: " + fileName, e);
+            return null;
+        }
+    }
+
     private void prepareBackgroundManager() {
 
         mBackgroundManager = BackgroundManager.getInstance(getActivity());
@@ -212,6 +256,9 @@ public class MainFragment extends BrowseSupportFragment {
             if (item instanceof Movie) {
                 mBackgroundUri = ((Movie) item).getBackgroundImageUrl();
                 startBackgroundTimer();
+            } else if (item instanceof JSONObject && row instanceof ListRow) {
+                ArrayObjectAdapter rowAdapter = (ArrayObjectAdapter) ((ListRow) row).getAdapter();
+                mActivationPresenter.prefetchAround(rowAdapter, rowAdapter.indexOf(item));
             }
         }
     }
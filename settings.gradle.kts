@@ -20,6 +20,7 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "sourcesync-sdk-ui-android"
+include(":sourcesync-sdk-core")
 include(":sourcesync-sdk-ui")
 include(":demo-mobile")
 include(":demo-tv")
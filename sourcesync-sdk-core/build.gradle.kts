@@ -0,0 +1,106 @@
+import com.vanniktech.maven.publish.SonatypeHost
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    alias(libs.plugins.jmh)
+    alias(libs.plugins.vanniktech.mavenPublish)
+    `java-test-fixtures`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+kotlin {
+    compilerOptions.jvmTarget.set(JvmTarget.JVM_17)
+}
+
+// The optimizeLayouts command line tool, kept out of the published jar
+val cli: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output
+    runtimeClasspath += sourceSets["main"].output
+}
+configurations["cliImplementation"].extendsFrom(configurations["implementation"])
+
+dependencies {
+    // org.json ships with Android; plain JVM consumers bring their own copy
+    compileOnly(libs.json)
+    // Only needed by apps that serve Brotli envelopes, see Payloads
+    compileOnly(libs.brotli.dec)
+
+    "cliImplementation"(libs.json)
+
+    // Envelope generators for tests and benchmarks, see SyntheticEnvelope
+    testFixturesCompileOnly(libs.json)
+
+    testImplementation(libs.json)
+    testImplementation(libs.kotlin.test)
+    testImplementation(libs.junit)
+
+    jmh(libs.json)
+    jmh(testFixtures(project))
+}
+
+// Test fixtures are shared with the UI module's tests but not published
+(components["java"] as AdhocComponentWithVariants).apply {
+    withVariantsFromConfiguration(configurations["testFixturesApiElements"]) { skip() }
+    withVariantsFromConfiguration(configurations["testFixturesRuntimeElements"]) { skip() }
+}
+
+// ./gradlew :sourcesync-sdk-core:optimizeLayouts --args="[--write] path/to/envelope.json ..."
+tasks.register<JavaExec>("optimizeLayouts") {
+    group = "sourcesync"
+    description = "Reports and flattens the view hierarchy of envelopes"
+    classpath = cli.runtimeClasspath
+    mainClass.set("io.sourcesync.sdk.core.LayoutOptimizerCli")
+    workingDir = rootDir
+}
+
+// The envelope benchmarks read the demo envelopes
+sourceSets["jmh"].resources.srcDir("../demo-mobile/src/main/assets")
+
+// ./gradlew :sourcesync-sdk-core:jmh
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+    // Allocation rate per operation next to the timings
+    profilers.add("gc")
+}
+
+mavenPublishing {
+    publishToMavenCentral(SonatypeHost.CENTRAL_PORTAL)
+    signAllPublications()
+    coordinates(group.toString(), "sourcesync-sdk-core", version.toString())
+    pom {
+        name.set("SourceSync SDK Core")
+        description.set("Platform independent core of the SourceSync SDK")
+        inceptionYear.set("2025")
+        url.set("https://github.com/Source-Digital/sourcesync-sdk-ui-android")
+        licenses {
+            license {
+                name.set("The Apache License, Version 2.0")
+                url.set("http://www.apache.org/licenses/LICENSE-2.0.txt")
+                distribution.set("repo")
+            }
+        }
+        developers {
+            developer {
+                id.set("sourcedigital")
+                name.set("Source Digital")
+                email.set("dev@sourcesync.io")
+                organization.set("Source Digital")
+                organizationUrl.set("https://sourcedigital.com/")
+            }
+        }
+        scm {
+            url.set("https://github.com/Source-Digital/sourcesync-sdk-ui-android")
+            connection.set("scm:git:git://github.com/Source-Digital/sourcesync-sdk-ui-android.git")
+            developerConnection.set("scm:git:ssh://github.com/Source-Digital/sourcesync-sdk-ui-android.git")
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.sourcesync.sdk.core
+
+import java.io.File
+import kotlin.system.exitProcess
+
+/**
+ * Command line front end of [LayoutOptimizer], for checking envelopes at ingestion time.
+ *
+ * ```
+ * ./gradlew :sourcesync-sdk-core:optimizeLayouts --args="[--write] envelope.json[.gz] ..."
+ * ```
+ * Prints the view hierarchy before and after optimization for each envelope. With `--write`
+ * each optimized envelope is saved next to its source as `<name>.optimized.json`.
+ */
+object LayoutOptimizerCli {
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val write = "--write" in args
+        val files = args.filter { it != "--write" }.map(::File)
+        if (files.isEmpty()) {
+            System.err.println("Usage: optimizeLayouts [--write] <envelope.json>...")
+            exitProcess(2)
+        }
+
+        println("%-32s %13s %13s %13s %17s %9s %11s".format(
+            "envelope", "views", "groups", "depth", "measure calls", "collapsed", "backgrounds"
+        ))
+        var failed = false
+        for (file in files) {
+            try {
+                val result = LayoutOptimizer.optimize(Payloads.readJson(file))
+                val before = result.before
+                val after = result.after
+                println("%-32s %13s %13s %13s %17s %9d %11d".format(
+                    file.name.take(32),
+                    change(before.views.toLong(), after.views.toLong()),
+                    change(before.viewGroups.toLong(), after.viewGroups.toLong()),
+                    change(before.depth.toLong(), after.depth.toLong()),
+                    change(before.measureCalls, after.measureCalls),
+                    result.collapsed,
+                    result.backgroundsMerged
+                ))
+                if (write && result.envelope !== result.original) {
+                    val target = File(file.parentFile, file.name.removeSuffix(".gz").removeSuffix(".json") + ".optimized.json")
+                    target.writeText(result.envelope.toString(2))
+                }
+            } catch (e: Exception) {
+                System.err.println("${file.name}: ${e.message}")
+                failed = true
+            }
+        }
+        if (failed) {
+            exitProcess(1)
+        }
+    }
+
+    private fun change(before: Long, after: Long) = "$before -> $after"
+}
@@ -0,0 +1,50 @@
+package io.sourcesync.sdk.core
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Timeline lookups done on every player position update
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class ActivationScheduleBenchmark {
+    // Activations in a two hour programme
+    @Param("100", "10000")
+    var cueCount: Int = 0
+
+    private val durationMs = 2 * 60 * 60 * 1000L
+    private lateinit var schedule: ActivationSchedule<Int>
+    private lateinit var positions: LongArray
+    private var next = 0
+
+    @Setup
+    fun setUp() {
+        val random = Random(42)
+        schedule = ActivationSchedule((0 until cueCount).map {
+            val start = random.nextLong(durationMs)
+            ActivationSchedule.Cue(start, start + 5_000 + random.nextLong(30_000), it)
+        })
+        positions = LongArray(1024) { random.nextLong(durationMs) }
+    }
+
+    private fun position(): Long = positions[next++ and 1023]
+
+    @Benchmark
+    fun activeAt(): List<Int> = schedule.activeAt(position())
+
+    @Benchmark
+    fun upcomingMinute(): List<Int> = schedule.upcoming(position(), 60_000)
+
+    @Benchmark
+    fun nextStart(): Long? = schedule.nextStartAfter(position())
+}
@@ -0,0 +1,52 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Envelope reading, splitting, hashing and cache lookups for the demo payloads
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class EnvelopeBenchmark {
+    @Param("sample.json", "div_details.json")
+    lateinit var asset: String
+
+    private lateinit var text: String
+    private lateinit var envelope: JSONObject
+    private lateinit var cache: ContentCache<Envelope>
+
+    @Setup
+    fun setUp() {
+        text = javaClass.getResourceAsStream("/$asset")!!.bufferedReader().use { it.readText() }
+        envelope = JSONObject(text)
+        cache = ContentCache(32)
+        cache.getOrPut(envelope, Envelope::split)
+    }
+
+    @Benchmark
+    fun readJson(): JSONObject = JSONObject(text)
+
+    @Benchmark
+    fun split(): Envelope = Envelope.split(envelope)
+
+    @Benchmark
+    fun hash(): String = ContentHash.of(envelope)
+
+    // Same instance: memoized key, LRU hit
+    @Benchmark
+    fun cacheHit(): Envelope = cache.getOrPut(envelope, Envelope::split)
+
+    // Equal content in a fresh instance: hashed again, then an LRU hit
+    @Benchmark
+    fun cacheHitByContent(): Envelope = cache.getOrPut(JSONObject(text), Envelope::split)
+}
@@ -0,0 +1,48 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * JVM side of envelope handling across [SyntheticEnvelope.LADDER].
+ *
+ * Allocation per operation comes from the gc profiler enabled in the build. The DivKit
+ * parse and inflate steps need a device, see EnvelopeScalingTest in the UI module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class EnvelopeScalingBenchmark {
+    // Index into SyntheticEnvelope.LADDER
+    @Param("0", "1", "2", "3", "4")
+    var rung: Int = 0
+
+    private lateinit var text: String
+    private lateinit var envelope: JSONObject
+
+    @Setup
+    fun setUp() {
+        envelope = SyntheticEnvelope.generate(SyntheticEnvelope.LADDER[rung])
+        text = envelope.toString()
+    }
+
+    @Benchmark
+    fun readJson(): JSONObject = JSONObject(text)
+
+    @Benchmark
+    fun writeJson(): String = envelope.toString()
+
+    @Benchmark
+    fun split(): Envelope = Envelope.split(envelope)
+
+    @Benchmark
+    fun hash(): String = ContentHash.of(text)
+}
@@ -0,0 +1,36 @@
+package io.sourcesync.sdk.core
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Routing of the URL kinds found in activation actions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class UrlRouterBenchmark {
+    private val urls = arrayOf(
+        "div-action://close",
+        "https://sourcesync.io/products/123?utm_source=tv",
+        "mailto:dev@sourcesync.io",
+        "tel:+15555550100",
+        "div-action://refresh",
+        "div-action:///back",
+        "myapp://activation/42",
+        "relative/path"
+    )
+
+    @Benchmark
+    fun routeAll(blackhole: Blackhole) {
+        for (url in urls) {
+            blackhole.consume(UrlRouter.route(url))
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.sourcesync.sdk.core
+
+/**
+ * Activations placed on the playback timeline.
+ *
+ * Cues are sorted once on construction. Lookups are binary searches, so the player
+ * can query on every position update without scanning the whole manifest.
+ *
+ * @param cues Activations with their start and end positions.
+ */
+class ActivationSchedule<T>(cues: Collection<Cue<T>>) {
+
+    /**
+     * An activation shown from [startMs] (inclusive) until [endMs] (exclusive)
+     */
+    data class Cue<T>(
+        val startMs: Long,
+        val endMs: Long,
+        val item: T
+    )
+
+    private val cues: List<Cue<T>> = cues.sortedBy { it.startMs }
+    private val starts = LongArray(this.cues.size) { this.cues[it].startMs }
+
+    // Latest end among the cues up to each index, to stop the backward scan early
+    private val maxEnds = LongArray(this.cues.size).also { ends ->
+        var max = Long.MIN_VALUE
+        this.cues.forEachIndexed { i, cue ->
+            max = maxOf(max, cue.endMs)
+            ends[i] = max
+        }
+    }
+
+    val size: Int
+        get() = cues.size
+
+    /**
+     * Activations that should be on screen at the playback position, in start order
+     */
+    fun activeAt(positionMs: Long): List<T> {
+        var i = upperBound(positionMs) - 1
+        val active = ArrayList<T>()
+        while (i >= 0 && maxEnds[i] > positionMs) {
+            val cue = cues[i]
+            if (cue.endMs > positionMs) {
+                active.add(cue.item)
+            }
+            i--
+        }
+        active.reverse()
+        return active
+    }
+
+    /**
+     * Activations starting after the position and no later than [windowMs] ahead of it
+     */
+    fun upcoming(positionMs: Long, windowMs: Long): List<T> {
+        val from = upperBound(positionMs)
+        val to = upperBound(positionMs + windowMs)
+        return cues.subList(from, to).map { it.item }
+    }
+
+    /**
+     * Start position of the first activation after the position, or null if there is none
+     */
+    fun nextStartAfter(positionMs: Long): Long? {
+        val i = upperBound(positionMs)
+        return if (i < starts.size) starts[i] else null
+    }
+
+    // Index of the first cue starting after the position
+    private fun upperBound(positionMs: Long): Int {
+        var low = 0
+        var high = starts.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (starts[mid] <= positionMs) low = mid + 1 else high = mid
+        }
+        return low
+    }
+}
@@ -0,0 +1,21 @@
+package io.sourcesync.sdk.core
+
+import org.brotli.dec.BrotliInputStream
+import java.io.InputStream
+
+/**
+ * The only reference to `org.brotli:dec`, which apps add only if they serve Brotli envelopes.
+ * Kept apart from [Payloads] so that loading Payloads never resolves the decoder classes.
+ */
+internal object BrotliDecoder {
+    val isAvailable: Boolean by lazy {
+        try {
+            Class.forName("org.brotli.dec.BrotliInputStream")
+            true
+        } catch (e: ClassNotFoundException) {
+            false
+        }
+    }
+
+    fun decode(input: InputStream): InputStream = BrotliInputStream(input)
+}
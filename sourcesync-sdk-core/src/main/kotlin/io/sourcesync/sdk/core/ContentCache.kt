@@ -0,0 +1,76 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+import java.util.WeakHashMap
+
+/**
+ * LRU cache of values derived from JSON envelopes, keyed by [ContentHash].
+ *
+ * Equal envelopes share one entry. The hash of a given [JSONObject] instance is memoized,
+ * so an envelope must not be mutated once it has been handed to the cache. Thread-safe.
+ *
+ * @param maxEntries Number of entries kept before the least recently used is evicted.
+ */
+class ContentCache<V : Any>(val maxEntries: Int) {
+    private val keys = WeakHashMap<JSONObject, String>()
+    private val entries = LinkedHashMap<String, V>(16, 0.75f, true)
+
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    /**
+     * Returns the content key for the envelope, computing it on first use
+     */
+    fun keyOf(envelope: JSONObject): String {
+        synchronized(keys) {
+            keys[envelope]?.let { return it }
+        }
+        val key = ContentHash.of(envelope)
+        synchronized(keys) {
+            keys[envelope] = key
+        }
+        return key
+    }
+
+    operator fun get(key: String): V? = synchronized(entries) { entries[key] }
+
+    fun get(envelope: JSONObject): V? = get(keyOf(envelope))
+
+    fun put(key: String, value: V) {
+        synchronized(entries) {
+            entries[key] = value
+            trimTo(maxEntries)
+        }
+    }
+
+    /**
+     * Returns the cached value for the envelope, creating it on the calling thread on a miss
+     */
+    fun getOrPut(envelope: JSONObject, create: (JSONObject) -> V): V {
+        val key = keyOf(envelope)
+        get(key)?.let { return it }
+
+        val value = create(envelope)
+        put(key, value)
+        return value
+    }
+
+    /**
+     * Evicts least recently used entries until at most [size] remain
+     */
+    fun trimToSize(size: Int) {
+        synchronized(entries) { trimTo(size) }
+    }
+
+    fun clear() {
+        synchronized(entries) { entries.clear() }
+    }
+
+    private fun trimTo(size: Int) {
+        val iterator = entries.entries.iterator()
+        while (entries.size > size.coerceAtLeast(0) && iterator.hasNext()) {
+            iterator.next()
+            iterator.remove()
+        }
+    }
+}
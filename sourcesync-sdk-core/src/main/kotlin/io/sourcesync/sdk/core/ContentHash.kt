@@ -0,0 +1,38 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+import java.security.MessageDigest
+
+/**
+ * Content hashes identifying envelopes independently of the object instance.
+ */
+object ContentHash {
+    private val HEX = "0123456789abcdef".toCharArray()
+
+    /**
+     * SHA-1 of the serialized JSON as lower-case hex
+     */
+    @JvmStatic
+    fun of(json: JSONObject): String = of(json.toString())
+
+    /**
+     * SHA-1 of the UTF-8 bytes of [text] as lower-case hex
+     */
+    @JvmStatic
+    fun of(text: String): String = of(text.toByteArray(Charsets.UTF_8))
+
+    /**
+     * SHA-1 of [bytes] as lower-case hex
+     */
+    @JvmStatic
+    fun of(bytes: ByteArray): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(bytes)
+        val chars = CharArray(digest.size * 2)
+        digest.forEachIndexed { i, byte ->
+            val value = byte.toInt() and 0xff
+            chars[i * 2] = HEX[value ushr 4]
+            chars[i * 2 + 1] = HEX[value and 0x0f]
+        }
+        return String(chars)
+    }
+}
@@ -0,0 +1,32 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+
+/**
+ * An activation envelope split into its `templates` and `card` parts.
+ *
+ * @property templateRefs Registered templates the envelope uses without embedding them,
+ * see [TemplateRegistry].
+ */
+class Envelope(
+    val templates: JSONObject,
+    val card: JSONObject,
+    val templateRefs: JSONObject? = null
+) {
+    companion object {
+        /**
+         * Splits an envelope, failing with [org.json.JSONException] when a part is missing.
+         * `templates` may be left out when the envelope has `template_refs`.
+         */
+        @JvmStatic
+        fun split(json: JSONObject): Envelope {
+            val refs = json.optJSONObject(TemplateRegistry.REFS_KEY)
+            val templates = if (refs != null) {
+                json.optJSONObject("templates") ?: JSONObject()
+            } else {
+                json.getJSONObject("templates")
+            }
+            return Envelope(templates, json.getJSONObject("card"), refs)
+        }
+    }
+}
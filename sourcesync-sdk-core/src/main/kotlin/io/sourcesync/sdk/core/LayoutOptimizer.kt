@@ -0,0 +1,347 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * Measures and flattens the view hierarchy of an envelope's card.
+ *
+ * Every DivKit container becomes a real ViewGroup with its own measure and layout pass.
+ * [optimize] removes containers that only wrap a single item, when the item fills them:
+ * - the container's margins and paddings are added to the item's margins;
+ * - its size and alignment are passed on to the item;
+ * - its background moves onto the item when both cover exactly the same area.
+ *
+ * Anything else, e.g. borders, actions or template-bound fields, keeps the container.
+ * Templates are left alone, since their fields may be bound per card.
+ */
+object LayoutOptimizer {
+    private val CONTAINER_KEYS = setOf(
+        "type", "orientation", "items", "width", "height", "margins", "paddings",
+        "alignment_horizontal", "alignment_vertical",
+        "content_alignment_horizontal", "content_alignment_vertical", "background"
+    )
+    private val ALIGNMENT_KEYS = listOf("alignment_horizontal", "alignment_vertical")
+    private val SIDES = setOf("left", "right", "top", "bottom", "start", "end")
+
+    // Built-in div types; anything else is a template
+    private val BUILT_IN_TYPES = setOf(
+        "container", "gallery", "grid", "image", "gif", "indicator", "input", "pager", "select",
+        "separator", "slider", "state", "switch", "tabs", "text", "video", "custom"
+    )
+
+    /**
+     * Shape of a card's view hierarchy
+     *
+     * @property views Views created for the default state, template expansions included.
+     * @property viewGroups Views among [views] that lay out children.
+     * @property depth Longest path from the root view to a leaf.
+     * @property measureCalls Estimated child measure calls for one layout pass. A wrap_content
+     * container measures its match_parent children a second time once its own size is known.
+     */
+    data class Stats(
+        val views: Int,
+        val viewGroups: Int,
+        val depth: Int,
+        val measureCalls: Long
+    )
+
+    /**
+     * Outcome of [optimize]
+     *
+     * @property envelope The optimized envelope, or the original one when nothing changed.
+     * @property collapsed Single-item containers removed.
+     * @property backgroundsMerged Backgrounds moved from a removed container onto its item.
+     */
+    class Result(
+        val original: JSONObject,
+        val envelope: JSONObject,
+        val collapsed: Int,
+        val backgroundsMerged: Int
+    ) {
+        val before: Stats by lazy { analyze(original) }
+        val after: Stats by lazy { analyze(envelope) }
+    }
+
+    @JvmStatic
+    fun analyze(envelope: JSONObject): Stats {
+        // Unregistered references only leave their templates out of the count
+        val templates = try {
+            TemplateRegistry.resolve(Envelope.split(envelope))
+        } catch (e: JSONException) {
+            envelope.optJSONObject("templates") ?: JSONObject()
+        }
+        val root = rootDiv(envelope) ?: return Stats(0, 0, 0, 0)
+        val counter = Counter(templates)
+        val depth = counter.visit(root, 1, 1)
+        return Stats(counter.views, counter.viewGroups, depth, counter.measureCalls)
+    }
+
+    @JvmStatic
+    fun optimize(envelope: JSONObject): Result {
+        val card = envelope.optJSONObject("card") ?: return Result(envelope, envelope, 0, 0)
+        val flattener = Flattener()
+        val rewritten = flattener.rewrite(card)
+        if (rewritten === card) {
+            return Result(envelope, envelope, 0, 0)
+        }
+        val optimized = shallowCopy(envelope).put("card", rewritten)
+        return Result(envelope, optimized, flattener.collapsed, flattener.backgroundsMerged)
+    }
+
+    private fun rootDiv(envelope: JSONObject): JSONObject? {
+        val states = envelope.optJSONObject("card")?.optJSONArray("states") ?: return null
+        return states.optJSONObject(0)?.optJSONObject("div")
+    }
+
+    private class Counter(private val templates: JSONObject) {
+        var views = 0
+        var viewGroups = 0
+        var measureCalls = 0L
+
+        // Returns the depth of the subtree
+        fun visit(div: JSONObject, depth: Int, measureFactor: Long): Int {
+            views++
+            measureCalls += measureFactor
+            val children = childrenOf(div, HashSet())
+            if (children.isEmpty()) {
+                return depth
+            }
+            viewGroups++
+
+            var deepest = depth
+            for (child in children) {
+                var factor = measureFactor
+                if (remeasures(div, child, "width") || remeasures(div, child, "height")) {
+                    factor *= 2
+                }
+                deepest = maxOf(deepest, visit(child, depth + 1, factor))
+            }
+            return deepest
+        }
+
+        private fun remeasures(parent: JSONObject, child: JSONObject, axis: String): Boolean {
+            return sizeType(parent, axis) == "wrap_content" && sizeType(child, axis) == "match_parent"
+        }
+
+        private fun sizeType(div: JSONObject, axis: String): String {
+            val size = field(div, axis, HashSet()) as? JSONObject
+            return size?.optString("type") ?: if (axis == "width") "match_parent" else "wrap_content"
+        }
+
+        private fun childrenOf(div: JSONObject, seen: MutableSet<String>): List<JSONObject> {
+            val type = div.optString("type")
+            val children = ArrayList<JSONObject>()
+            when (type) {
+                "container", "gallery", "pager", "grid" -> div.optJSONArray("items")?.forEachObject { children.add(it) }
+                "tabs" -> div.optJSONArray("items")?.forEachObject { item -> item.optJSONObject("div")?.let { children.add(it) } }
+                "state" -> div.optJSONArray("states")?.optJSONObject(0)?.optJSONObject("div")?.let { children.add(it) }
+                else -> {
+                    val template = templates.optJSONObject(type)
+                    if (template != null && seen.add(type)) {
+                        // The card may replace the template's items
+                        val merged = if (div.has("items")) shallowCopy(template).put("items", div.get("items")) else template
+                        return childrenOf(merged, seen)
+                    }
+                }
+            }
+            return children
+        }
+
+        private fun field(div: JSONObject, key: String, seen: MutableSet<String>): Any? {
+            div.opt(key)?.let { return it }
+            val type = div.optString("type")
+            val template = templates.optJSONObject(type) ?: return null
+            return if (seen.add(type)) field(template, key, seen) else null
+        }
+    }
+
+    private class Flattener {
+        var collapsed = 0
+        var backgroundsMerged = 0
+
+        // Copy-on-write walk, children first so that chains of wrappers collapse in one pass
+        fun rewrite(node: Any): Any {
+            return when (node) {
+                is JSONObject -> rewriteObject(node)
+                is JSONArray -> rewriteArray(node)
+                else -> node
+            }
+        }
+
+        private fun rewriteObject(node: JSONObject): JSONObject {
+            var copy: JSONObject? = null
+            val keys = node.keys()
+            while (keys.hasNext()) {
+                val key = keys.next()
+                val value = node.get(key)
+                val rewritten = rewrite(value)
+                if (rewritten !== value) {
+                    copy = copy ?: shallowCopy(node)
+                    copy.put(key, rewritten)
+                }
+            }
+            val result = copy ?: node
+            return collapse(result) ?: result
+        }
+
+        private fun rewriteArray(node: JSONArray): JSONArray {
+            var copy: JSONArray? = null
+            for (i in 0 until node.length()) {
+                val value = node.get(i)
+                val rewritten = rewrite(value)
+                if (rewritten !== value) {
+                    copy = copy ?: JSONArray().also { c -> for (j in 0 until node.length()) c.put(node.get(j)) }
+                    copy.put(i, rewritten)
+                }
+            }
+            return copy ?: node
+        }
+
+        /**
+         * Returns the item that replaces a single-item container, or null to keep it
+         */
+        private fun collapse(container: JSONObject): JSONObject? {
+            if (container.optString("type") != "container") {
+                return null
+            }
+            val keys = container.keys()
+            while (keys.hasNext()) {
+                if (keys.next() !in CONTAINER_KEYS) {
+                    return null
+                }
+            }
+            val items = container.optJSONArray("items")
+            if (items == null || items.length() != 1) {
+                return null
+            }
+            val item = items.optJSONObject(0) ?: return null
+            if (item.optString("type") !in BUILT_IN_TYPES) {
+                return null
+            }
+
+            val width = sizeOf(container, item, "width", "match_parent", "paddings", listOf("left", "right", "start", "end"))
+                ?: return null
+            val height = sizeOf(container, item, "height", "wrap_content", "paddings", listOf("top", "bottom"))
+                ?: return null
+
+            val background = container.optJSONArray("background")
+            if (background != null) {
+                // Both must cover the same area with nothing drawn in between
+                if (container.has("paddings") || item.has("margins") || item.has("background") || item.has("border")) {
+                    return null
+                }
+            }
+
+            val margins = sumMargins(container.optJSONObject("margins"), container.optJSONObject("paddings"), item.optJSONObject("margins"))
+                ?: return null
+
+            val replacement = shallowCopy(item)
+                .put("width", width)
+                .put("height", height)
+            if (margins.length() > 0) {
+                replacement.put("margins", margins)
+            } else {
+                replacement.remove("margins")
+            }
+            // The item fills the container, so only the container's own alignment shows
+            for (key in ALIGNMENT_KEYS) {
+                val alignment = container.opt(key)
+                if (alignment != null) {
+                    replacement.put(key, alignment)
+                } else {
+                    replacement.remove(key)
+                }
+            }
+            if (background != null) {
+                replacement.put("background", background)
+                backgroundsMerged++
+            }
+            collapsed++
+            return replacement
+        }
+
+        /**
+         * The item's size after it replaces the container, or null when the item does not
+         * fill the container along [axis]
+         */
+        private fun sizeOf(
+            container: JSONObject,
+            item: JSONObject,
+            axis: String,
+            default: String,
+            paddingsKey: String,
+            paddingSides: List<String>
+        ): JSONObject? {
+            val outer = container.opt(axis) ?: JSONObject().put("type", default)
+            val inner = item.opt(axis) ?: JSONObject().put("type", if (axis == "width") "match_parent" else "wrap_content")
+            if (outer !is JSONObject || inner !is JSONObject) {
+                return null
+            }
+            val outerType = outer.optString("type")
+            val innerType = inner.optString("type")
+            return when {
+                // Weights, constraints and the like are not carried over
+                outer.length() != 1 && outerType != "fixed" -> null
+                outerType == "wrap_content" && innerType != "match_parent" -> inner
+                outerType == "match_parent" && innerType == "match_parent" && inner.length() == 1 -> inner
+                outerType == "fixed" && innerType == "match_parent" && inner.length() == 1 -> {
+                    // A fixed size includes the paddings, which become margins outside of it, and
+                    // the item's margins, which would no longer be taken out of it
+                    val paddings = container.optJSONObject(paddingsKey)
+                    val margins = item.optJSONObject("margins")
+                    when {
+                        paddings != null && paddingSides.any { paddings.has(it) } -> null
+                        margins != null && paddingSides.any { margins.has(it) } -> null
+                        else -> outer
+                    }
+                }
+                else -> null
+            }
+        }
+
+        private fun sumMargins(vararg parts: JSONObject?): JSONObject? {
+            val sum = JSONObject()
+            for (part in parts) {
+                part ?: continue
+                val sides = part.keys()
+                while (sides.hasNext()) {
+                    val side = sides.next()
+                    // Units other than dp and expressions can't be added up
+                    if (side == "unit") {
+                        if (part.optString(side) != "dp") return null
+                        continue
+                    }
+                    val value = part.get(side)
+                    if (side !in SIDES || value !is Int) {
+                        return null
+                    }
+                    sum.put(side, sum.optInt(side) + value)
+                }
+            }
+            // start and end take precedence over left and right, so they can't be mixed
+            val relative = sum.has("start") || sum.has("end")
+            if (relative && (sum.has("left") || sum.has("right"))) {
+                return null
+            }
+            return sum
+        }
+    }
+
+    private inline fun JSONArray.forEachObject(action: (JSONObject) -> Unit) {
+        for (i in 0 until length()) {
+            optJSONObject(i)?.let(action)
+        }
+    }
+
+    private fun shallowCopy(node: JSONObject): JSONObject {
+        val copy = JSONObject()
+        val keys = node.keys()
+        while (keys.hasNext()) {
+            val key = keys.next()
+            copy.put(key, node.get(key))
+        }
+        return copy
+    }
+}
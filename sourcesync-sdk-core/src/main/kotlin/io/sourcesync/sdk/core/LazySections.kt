@@ -0,0 +1,186 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Rewrites an envelope so that long sections inside vertical galleries are bound lazily.
+ *
+ * A DivKit gallery is a RecyclerView. It binds only the items in and near its viewport.
+ * A section that is a single gallery item, though, is bound and measured in full, however
+ * tall it is. This pass splices plain vertical containers into the gallery around them,
+ * so each of their children becomes an item of its own. The result renders the same:
+ * - only containers without any visual properties are spliced;
+ * - the gallery's item spacing is kept between the original items with transparent separators.
+ *
+ * Templates are left alone, since their fields may be bound per card.
+ */
+object LazySections {
+    private val SECTION_KEYS = setOf("type", "orientation", "width", "height", "items")
+    private val ALIGN_START = setOf("start", "left")
+    private const val DEFAULT_ITEM_SPACING = 8
+
+    // Built-in div types, whose width defaults to match_parent. Anything else is a template.
+    private val BUILT_IN_TYPES = setOf(
+        "container", "gallery", "grid", "image", "gif", "indicator", "input", "pager", "select",
+        "separator", "slider", "state", "switch", "tabs", "text", "video", "custom"
+    )
+
+    /**
+     * Returns the rewritten envelope, or [envelope] itself when there is nothing to splice.
+     * Applying it to its own output returns that output unchanged.
+     */
+    @JvmStatic
+    fun virtualize(envelope: JSONObject): JSONObject {
+        val card = envelope.optJSONObject("card") ?: return envelope
+        val rewritten = rewrite(card)
+        if (rewritten === card) {
+            return envelope
+        }
+        return shallowCopy(envelope).put("card", rewritten)
+    }
+
+    // Copy-on-write walk: unchanged subtrees are returned as the same instances
+    private fun rewrite(node: Any): Any {
+        return when (node) {
+            is JSONObject -> rewriteObject(node)
+            is JSONArray -> rewriteArray(node)
+            else -> node
+        }
+    }
+
+    private fun rewriteObject(node: JSONObject): JSONObject {
+        var copy: JSONObject? = null
+        val keys = node.keys()
+        while (keys.hasNext()) {
+            val key = keys.next()
+            val value = node.get(key)
+            val rewritten = rewrite(value)
+            if (rewritten !== value) {
+                copy = copy ?: shallowCopy(node)
+                copy.put(key, rewritten)
+            }
+        }
+        val result = copy ?: node
+        return if (isVerticalGallery(result)) spliceSections(result) else result
+    }
+
+    private fun rewriteArray(node: JSONArray): JSONArray {
+        var copy: JSONArray? = null
+        for (i in 0 until node.length()) {
+            val value = node.get(i)
+            val rewritten = rewrite(value)
+            if (rewritten !== value) {
+                copy = copy ?: JSONArray().also { c -> for (j in 0 until node.length()) c.put(node.get(j)) }
+                copy.put(i, rewritten)
+            }
+        }
+        return copy ?: node
+    }
+
+    private fun spliceSections(gallery: JSONObject): JSONObject {
+        val items = gallery.optJSONArray("items") ?: return gallery
+        val spacing = when (val value = gallery.opt("item_spacing")) {
+            null -> DEFAULT_ITEM_SPACING
+            is Int -> value
+            // An expression; the spacing is unknown until binding
+            else -> return gallery
+        }
+        val alignedStart = gallery.optString("cross_content_alignment", "start") in ALIGN_START &&
+            gallery.optString("content_alignment_horizontal", "start") in ALIGN_START
+
+        var spliced = false
+        val flattened = JSONArray()
+        for (i in 0 until items.length()) {
+            val item = items.get(i)
+            if (i > 0 && spacing > 0) {
+                flattened.put(spacer(spacing))
+            }
+            if (item is JSONObject && isSection(item, alignedStart)) {
+                appendChildren(item, alignedStart, flattened)
+                spliced = true
+            } else {
+                flattened.put(item)
+            }
+        }
+        if (!spliced) {
+            return gallery
+        }
+        return shallowCopy(gallery)
+            .put("items", flattened)
+            .put("item_spacing", 0)
+    }
+
+    private fun appendChildren(section: JSONObject, alignedStart: Boolean, out: JSONArray) {
+        val children = section.getJSONArray("items")
+        for (i in 0 until children.length()) {
+            val child = children.get(i)
+            if (child is JSONObject && isSection(child, alignedStart)) {
+                appendChildren(child, alignedStart, out)
+            } else {
+                out.put(child)
+            }
+        }
+    }
+
+    /**
+     * A container that only stacks its children, so removing it changes nothing on screen
+     */
+    private fun isSection(div: JSONObject, alignedStart: Boolean): Boolean {
+        if (div.optString("type") != "container" || div.optString("orientation", "vertical") != "vertical") {
+            return false
+        }
+        val keys = div.keys()
+        while (keys.hasNext()) {
+            if (keys.next() !in SECTION_KEYS) {
+                return false
+            }
+        }
+        val children = div.optJSONArray("items") ?: return false
+        if (!hasSize(div, "width", "match_parent") || !hasSize(div, "height", "wrap_content")) {
+            return false
+        }
+        if (alignedStart) {
+            return true
+        }
+        // The gallery aligns its items differently than the container aligned them,
+        // which only makes no difference for children filling the width
+        for (i in 0 until children.length()) {
+            val child = children.optJSONObject(i) ?: return false
+            if (child.optString("type") !in BUILT_IN_TYPES || !hasSize(child, "width", "match_parent")) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun hasSize(div: JSONObject, key: String, default: String): Boolean {
+        val size = div.opt(key) ?: return true
+        return size is JSONObject && size.length() == 1 && size.optString("type") == default
+    }
+
+    private fun isVerticalGallery(div: JSONObject): Boolean {
+        return div.optString("type") == "gallery" &&
+            div.optString("orientation") == "vertical" &&
+            div.optString("scroll_mode", "default") == "default" &&
+            !div.has("item_builder")
+    }
+
+    private fun spacer(height: Int): JSONObject {
+        return JSONObject()
+            .put("type", "separator")
+            .put("width", JSONObject().put("type", "match_parent"))
+            .put("height", JSONObject().put("type", "fixed").put("value", height))
+            .put("delimiter_style", JSONObject().put("color", "#00000000"))
+    }
+
+    private fun shallowCopy(node: JSONObject): JSONObject {
+        val copy = JSONObject()
+        val keys = node.keys()
+        while (keys.hasNext()) {
+            val key = keys.next()
+            copy.put(key, node.get(key))
+        }
+        return copy
+    }
+}
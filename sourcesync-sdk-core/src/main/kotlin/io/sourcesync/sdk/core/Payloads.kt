@@ -0,0 +1,114 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.BufferedInputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+
+/**
+ * Reads envelopes that may be compressed.
+ *
+ * Envelopes are repetitive JSON and shrink about tenfold. Compressed payloads are decompressed
+ * while they are read, so there is no decompressed byte copy; org.json only parses from a
+ * String, which is built once from the decoded characters.
+ *
+ * gzip and zstd are recognised by their magic bytes. Brotli has none, so it has to be declared
+ * by a `.br` file name or `Content-Encoding: br`, and needs `org.brotli:dec` on the classpath,
+ * see [BrotliDecoder].
+ * zstd is only recognised to fail with a clear message, as its decoders are native libraries.
+ */
+object Payloads {
+    private const val BUFFER_SIZE = 8192
+
+    enum class Encoding { IDENTITY, GZIP, BROTLI, ZSTD }
+
+    /**
+     * Value for the `Accept-Encoding` request header, listing the encodings that can be read
+     */
+    @JvmStatic
+    val acceptEncoding: String
+        get() = if (BrotliDecoder.isAvailable) "br, gzip" else "gzip"
+
+    /**
+     * Encoding for a `Content-Encoding` value or a file name, or null if it is not declared
+     */
+    @JvmStatic
+    fun encodingOf(name: String?): Encoding? {
+        val value = name?.trim()?.lowercase() ?: return null
+        return when {
+            value == "gzip" || value.endsWith(".gz") -> Encoding.GZIP
+            value == "br" || value.endsWith(".br") -> Encoding.BROTLI
+            value == "zstd" || value.endsWith(".zst") -> Encoding.ZSTD
+            value == "identity" -> Encoding.IDENTITY
+            else -> null
+        }
+    }
+
+    /**
+     * Wraps the stream so that it yields the decompressed payload
+     *
+     * @param encoding Declared encoding, or null to detect gzip and zstd from the first bytes.
+     * @throws IOException When the payload is zstd, or Brotli without a decoder.
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Throws(IOException::class)
+    fun decode(input: InputStream, encoding: Encoding? = null): InputStream {
+        val buffered = if (input.markSupported()) input else BufferedInputStream(input, BUFFER_SIZE)
+        return when (encoding ?: sniff(buffered)) {
+            Encoding.IDENTITY -> buffered
+            Encoding.GZIP -> GZIPInputStream(buffered, BUFFER_SIZE)
+            Encoding.BROTLI -> {
+                if (!BrotliDecoder.isAvailable) {
+                    throw IOException("Brotli payloads need org.brotli:dec on the classpath")
+                }
+                BrotliDecoder.decode(buffered)
+            }
+            Encoding.ZSTD -> throw IOException("zstd payloads are not supported, use gzip or Brotli")
+        }
+    }
+
+    /**
+     * Reads a JSON object from a possibly compressed stream and closes it
+     *
+     * @throws IOException When the stream can't be read or decompressed.
+     * @throws JSONException When the payload is not a JSON object.
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Throws(IOException::class, JSONException::class)
+    fun readJson(input: InputStream, encoding: Encoding? = null): JSONObject {
+        // Closes the input as well when decode() rejects the encoding
+        val text = input.use { decode(it, encoding).reader(Charsets.UTF_8).use { reader -> reader.readText() } }
+        return JSONObject(text)
+    }
+
+    /**
+     * Reads a JSON object from a file, compressed according to its name or first bytes
+     */
+    @JvmStatic
+    @Throws(IOException::class, JSONException::class)
+    fun readJson(file: File): JSONObject = readJson(file.inputStream(), encodingOf(file.name))
+
+    private fun sniff(input: InputStream): Encoding {
+        val magic = ByteArray(4)
+        input.mark(magic.size)
+        var read = 0
+        while (read < magic.size) {
+            val count = input.read(magic, read, magic.size - read)
+            if (count < 0) break
+            read += count
+        }
+        input.reset()
+
+        return when {
+            read >= 2 && magic[0] == 0x1f.toByte() && magic[1] == 0x8b.toByte() -> Encoding.GZIP
+            read >= 4 && magic[0] == 0x28.toByte() && magic[1] == 0xb5.toByte() &&
+                magic[2] == 0x2f.toByte() && magic[3] == 0xfd.toByte() -> Encoding.ZSTD
+            else -> Encoding.IDENTITY
+        }
+    }
+}
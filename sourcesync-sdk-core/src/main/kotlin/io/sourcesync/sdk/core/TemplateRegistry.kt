@@ -0,0 +1,210 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.util.WeakHashMap
+
+/**
+ * Process-wide registry of named DivKit templates, interned by name and content hash.
+ *
+ * Templates registered once, e.g. from an app asset or at the start of a show, need not be
+ * embedded in every envelope. An envelope lists them under `template_refs` instead, as a map
+ * of template name to content hash:
+ * ```
+ * { "templates": {}, "template_refs": { "divgram_card": "3f2a…" }, "card": { … } }
+ * ```
+ * [resolve] puts the registered templates back together with the embedded ones, and
+ * [internKeys] gives parsers a key per template under which a parsed copy can be reused.
+ * Registered templates must not be mutated. Thread-safe.
+ */
+object TemplateRegistry {
+    const val REFS_KEY = "template_refs"
+
+    private val templates = HashMap<String, JSONObject>()
+    private val hashes = WeakHashMap<JSONObject, String>()
+
+    val size: Int
+        get() = synchronized(templates) { templates.size }
+
+    /**
+     * Registers a template and returns its content hash, to be used in `template_refs`
+     */
+    @JvmStatic
+    fun register(name: String, template: JSONObject): String {
+        val hash = hashOf(template)
+        synchronized(templates) {
+            templates.putIfAbsent(idOf(name, hash), template)
+        }
+        return hash
+    }
+
+    /**
+     * Registers every template of a `templates` object
+     * @return The references to put under `template_refs`.
+     */
+    @JvmStatic
+    fun registerAll(templates: JSONObject): JSONObject {
+        val refs = JSONObject()
+        val names = templates.keys()
+        while (names.hasNext()) {
+            val name = names.next()
+            refs.put(name, register(name, templates.getJSONObject(name)))
+        }
+        return refs
+    }
+
+    @JvmStatic
+    fun get(name: String, hash: String): JSONObject? {
+        return synchronized(templates) { templates[idOf(name, hash)] }
+    }
+
+    fun clear() {
+        synchronized(templates) { templates.clear() }
+    }
+
+    /**
+     * Returns the envelope's embedded templates plus the registered ones it refers to.
+     * Returns the embedded templates object itself when there are no references.
+     *
+     * @throws JSONException When a reference is not registered, or names a template that is
+     * also embedded with different content.
+     */
+    @JvmStatic
+    fun resolve(envelope: Envelope): JSONObject {
+        val refs = envelope.templateRefs
+        if (refs == null || refs.length() == 0) {
+            return envelope.templates
+        }
+
+        val resolved = JSONObject()
+        val embedded = envelope.templates.keys()
+        while (embedded.hasNext()) {
+            val name = embedded.next()
+            resolved.put(name, envelope.templates.get(name))
+        }
+        val names = refs.keys()
+        while (names.hasNext()) {
+            val name = names.next()
+            val hash = refs.getString(name)
+            val template = get(name, hash) ?: throw JSONException("Template $name@$hash is not registered")
+            val existing = resolved.optJSONObject(name)
+            if (existing != null && hashOf(existing) != hash) {
+                throw JSONException("Template $name is both embedded and referenced with different content")
+            }
+            resolved.put(name, template)
+        }
+        return resolved
+    }
+
+    /**
+     * Replaces the embedded templates that are registered with references to them,
+     * e.g. before storing or sending an envelope
+     */
+    @JvmStatic
+    fun strip(envelope: JSONObject): JSONObject {
+        val split = Envelope.split(envelope)
+        val kept = JSONObject()
+        val refs = split.templateRefs?.let { JSONObject(it.toString()) } ?: JSONObject()
+        val names = split.templates.keys()
+        while (names.hasNext()) {
+            val name = names.next()
+            val template = split.templates.getJSONObject(name)
+            val hash = hashOf(template)
+            if (get(name, hash) != null) {
+                refs.put(name, hash)
+            } else {
+                kept.put(name, template)
+            }
+        }
+        if (refs.length() == 0) {
+            return envelope
+        }
+        val stripped = JSONObject()
+        val keys = envelope.keys()
+        while (keys.hasNext()) {
+            val key = keys.next()
+            stripped.put(key, envelope.get(key))
+        }
+        return stripped.put("templates", kept).put(REFS_KEY, refs)
+    }
+
+    /**
+     * Returns a key per template that is equal for equal content, taking the templates
+     * it is built on into account, since those are resolved into it when it is parsed.
+     *
+     * @param templates A `templates` object, e.g. from [resolve].
+     */
+    @JvmStatic
+    fun internKeys(templates: JSONObject): Map<String, String> {
+        val keys = HashMap<String, String>()
+        val names = templates.keys()
+        while (names.hasNext()) {
+            internKey(names.next(), templates, keys, HashSet())
+        }
+        return keys
+    }
+
+    private fun internKey(
+        name: String,
+        templates: JSONObject,
+        keys: MutableMap<String, String>,
+        visiting: MutableSet<String>
+    ): String {
+        keys[name]?.let { return it }
+        val template = templates.getJSONObject(name)
+        if (!visiting.add(name)) {
+            // A cycle, which the parser rejects; the content alone is key enough
+            return idOf(name, hashOf(template))
+        }
+
+        val dependencies = sortedSetOf<String>()
+        collectTypes(template, templates, dependencies)
+        dependencies.remove(name)
+
+        var key = idOf(name, hashOf(template))
+        if (dependencies.isNotEmpty()) {
+            val dependencyKeys = dependencies.joinToString(",") { internKey(it, templates, keys, visiting) }
+            key = idOf(name, ContentHash.of("$key|$dependencyKeys"))
+        }
+        visiting.remove(name)
+        keys[name] = key
+        return key
+    }
+
+    // Template names used as a div type anywhere inside [node]
+    private fun collectTypes(node: Any, templates: JSONObject, out: MutableSet<String>) {
+        when (node) {
+            is JSONObject -> {
+                val keys = node.keys()
+                while (keys.hasNext()) {
+                    val key = keys.next()
+                    val value = node.get(key)
+                    if (key == "type" && value is String && templates.has(value)) {
+                        out.add(value)
+                    } else if (value is JSONObject || value is JSONArray) {
+                        collectTypes(value, templates, out)
+                    }
+                }
+            }
+            is JSONArray -> {
+                for (i in 0 until node.length()) {
+                    collectTypes(node.get(i), templates, out)
+                }
+            }
+        }
+    }
+
+    private fun hashOf(template: JSONObject): String {
+        synchronized(hashes) {
+            hashes[template]?.let { return it }
+        }
+        val hash = ContentHash.of(template)
+        synchronized(hashes) {
+            hashes[template] = hash
+        }
+        return hash
+    }
+
+    private fun idOf(name: String, hash: String) = "$name@$hash"
+}
@@ -0,0 +1,102 @@
+package io.sourcesync.sdk.core
+
+/**
+ * What an activation URL should do when it is tapped
+ */
+enum class UrlRoute {
+    /** `div-action://close` and equivalents */
+    CLOSE,
+
+    /** `div-action://refresh` */
+    REFRESH,
+
+    /** `div-action://back` */
+    BACK,
+
+    /** Any other `div-action` URL */
+    UNKNOWN_DIV_ACTION,
+
+    /** http and https links */
+    EXTERNAL,
+    MAILTO,
+    TEL,
+    SMS,
+
+    /** Any other scheme, handed to the app or the system */
+    CUSTOM,
+
+    /** No usable scheme */
+    UNHANDLED
+}
+
+/**
+ * Classifies URLs coming from DivKit actions without touching Android APIs.
+ *
+ * Scheme, host and path are split the same way `android.net.Uri` splits them,
+ * so routing matches what the handler sees when it builds the intent.
+ */
+object UrlRouter {
+    private const val DIV_ACTION = "div-action"
+
+    @JvmStatic
+    fun route(url: String): UrlRoute {
+        val normalized = url.lowercase()
+        if (normalized.startsWith("div-action://close")) {
+            return UrlRoute.CLOSE
+        }
+        if (normalized.startsWith("http://") || normalized.startsWith("https://")) {
+            return UrlRoute.EXTERNAL
+        }
+
+        val scheme = schemeOf(normalized)
+        if (scheme == null || normalized.startsWith("http")) {
+            return UrlRoute.UNHANDLED
+        }
+        return when (scheme) {
+            "mailto" -> UrlRoute.MAILTO
+            "tel" -> UrlRoute.TEL
+            "sms" -> UrlRoute.SMS
+            DIV_ACTION -> divActionOf(normalized, scheme.length)
+            else -> UrlRoute.CUSTOM
+        }
+    }
+
+    /**
+     * Returns the scheme, or null if the URL is relative
+     */
+    @JvmStatic
+    fun schemeOf(url: String): String? {
+        for (i in url.indices) {
+            when (url[i]) {
+                ':' -> return if (i > 0) url.substring(0, i) else null
+                '/', '?', '#' -> return null
+            }
+        }
+        return null
+    }
+
+    private fun divActionOf(url: String, schemeLength: Int): UrlRoute {
+        val rest = url.substring(schemeLength + 1)
+        val end = rest.indexOfAny(charArrayOf('?', '#')).let { if (it < 0) rest.length else it }
+        val hierarchical = rest.substring(0, end)
+
+        val target = when {
+            hierarchical.startsWith("//") -> {
+                // Host plus path, with user info and port dropped from the authority
+                val authorityEnd = hierarchical.indexOf('/', 2).let { if (it < 0) hierarchical.length else it }
+                val host = hierarchical.substring(2, authorityEnd).substringAfterLast('@').substringBefore(':')
+                host + hierarchical.substring(authorityEnd)
+            }
+            hierarchical.startsWith("/") -> hierarchical
+            // Opaque URLs such as div-action:close have neither host nor path
+            else -> ""
+        }
+
+        return when (target) {
+            "close", "/close" -> UrlRoute.CLOSE
+            "refresh", "/refresh" -> UrlRoute.REFRESH
+            "back", "/back" -> UrlRoute.BACK
+            else -> UrlRoute.UNKNOWN_DIV_ACTION
+        }
+    }
+}
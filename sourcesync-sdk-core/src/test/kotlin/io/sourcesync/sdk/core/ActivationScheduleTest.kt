@@ -0,0 +1,33 @@
+package io.sourcesync.sdk.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class ActivationScheduleTest {
+    private val schedule = ActivationSchedule(
+        listOf(
+            ActivationSchedule.Cue(10_000, 20_000, "c"),
+            ActivationSchedule.Cue(0, 60_000, "a"),
+            ActivationSchedule.Cue(5_000, 8_000, "b"),
+            ActivationSchedule.Cue(30_000, 40_000, "d")
+        )
+    )
+
+    @Test
+    fun activeAtIncludesStartAndExcludesEnd() {
+        assertEquals(listOf("a"), schedule.activeAt(0))
+        assertEquals(listOf("a", "b"), schedule.activeAt(5_000))
+        assertEquals(listOf("a"), schedule.activeAt(8_000))
+        assertEquals(listOf("a", "c"), schedule.activeAt(19_999))
+        assertEquals(emptyList<String>(), schedule.activeAt(60_000))
+    }
+
+    @Test
+    fun upcomingLooksAheadFromPosition() {
+        assertEquals(listOf("b", "c"), schedule.upcoming(0, 10_000))
+        assertEquals(listOf("d"), schedule.upcoming(10_000, 60_000))
+        assertEquals(30_000L, schedule.nextStartAfter(10_000))
+        assertNull(schedule.nextStartAfter(30_000))
+    }
+}
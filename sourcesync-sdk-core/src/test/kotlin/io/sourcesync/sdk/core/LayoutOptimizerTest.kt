@@ -0,0 +1,111 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class LayoutOptimizerTest {
+    @Test
+    fun collapsesWrappersIntoTheirItem() {
+        val image = JSONObject()
+            .put("type", "image")
+            .put("image_url", "https://example.com/a.png")
+            .put("width", fixed(60))
+            .put("height", fixed(60))
+            .put("margins", JSONObject().put("left", 2))
+        val wrapper = JSONObject()
+            .put("type", "container")
+            .put("width", JSONObject().put("type", "wrap_content"))
+            .put("margins", JSONObject().put("left", 4))
+            .put("paddings", JSONObject().put("left", 8).put("top", 1))
+            .put("alignment_horizontal", "right")
+            .put("items", JSONArray().put(image))
+        val outer = JSONObject()
+            .put("type", "container")
+            .put("width", JSONObject().put("type", "wrap_content"))
+            .put("items", JSONArray().put(wrapper))
+
+        val result = LayoutOptimizer.optimize(envelope(outer))
+        val root = rootOf(result.envelope)
+
+        assertEquals(2, result.collapsed)
+        assertEquals("image", root.getString("type"))
+        assertEquals(14, root.getJSONObject("margins").getInt("left"))
+        assertEquals(1, root.getJSONObject("margins").getInt("top"))
+        assertFalse(root.has("alignment_horizontal"))
+        assertEquals(60, root.getJSONObject("width").getInt("value"))
+        assertEquals(LayoutOptimizer.Stats(3, 2, 3, 3), result.before)
+        assertEquals(LayoutOptimizer.Stats(1, 0, 1, 1), result.after)
+    }
+
+    @Test
+    fun movesBackgroundOntoAnItemFillingTheContainer() {
+        val background = JSONArray().put(JSONObject().put("type", "solid").put("color", "#99000000"))
+        val container = JSONObject()
+            .put("type", "container")
+            .put("height", fixed(100))
+            .put("background", background)
+            .put("items", JSONArray().put(text().put("height", JSONObject().put("type", "match_parent"))))
+
+        val result = LayoutOptimizer.optimize(envelope(container))
+        val root = rootOf(result.envelope)
+
+        assertEquals(1, result.backgroundsMerged)
+        assertEquals("text", root.getString("type"))
+        assertEquals(100, root.getJSONObject("height").getInt("value"))
+        assertSame(background, root.getJSONArray("background"))
+    }
+
+    @Test
+    fun keepsContainersThatChangeRendering() {
+        val bordered = JSONObject()
+            .put("type", "container")
+            .put("border", JSONObject().put("corner_radius", 10))
+            .put("items", JSONArray().put(text()))
+        val narrowItem = JSONObject()
+            .put("type", "container")
+            .put("items", JSONArray().put(text().put("width", JSONObject().put("type", "wrap_content"))))
+        val templated = JSONObject()
+            .put("type", "container")
+            .put("margins", JSONObject().put("top", 4))
+            .put("items", JSONArray().put(JSONObject().put("type", "divgram_card")))
+        val inset = JSONObject()
+            .put("type", "container")
+            .put("width", fixed(100))
+            .put("items", JSONArray().put(text().put("margins", JSONObject().put("left", 10))))
+        val root = JSONObject()
+            .put("type", "container")
+            .put("items", JSONArray().put(bordered).put(narrowItem).put(templated).put(inset))
+        val envelope = envelope(root)
+
+        assertSame(envelope, LayoutOptimizer.optimize(envelope).envelope)
+    }
+
+    @Test
+    fun countsDoubleMeasureOfMatchParentChildren() {
+        val root = JSONObject()
+            .put("type", "container")
+            .put("width", JSONObject().put("type", "wrap_content"))
+            .put("items", JSONArray().put(text()).put(text()))
+
+        assertEquals(5L, LayoutOptimizer.analyze(envelope(root)).measureCalls)
+    }
+
+    private fun text() = JSONObject().put("type", "text").put("text", "value")
+
+    private fun fixed(value: Int) = JSONObject().put("type", "fixed").put("value", value)
+
+    private fun envelope(div: JSONObject): JSONObject {
+        val state = JSONObject().put("state_id", 0).put("div", div)
+        return JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject().put("log_id", "test").put("states", JSONArray().put(state)))
+    }
+
+    private fun rootOf(envelope: JSONObject): JSONObject {
+        return envelope.getJSONObject("card").getJSONArray("states").getJSONObject(0).getJSONObject("div")
+    }
+}
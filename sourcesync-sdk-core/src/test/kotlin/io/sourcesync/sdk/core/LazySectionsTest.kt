@@ -0,0 +1,89 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class LazySectionsTest {
+    @Test
+    fun splicesSectionsIntoTheGallery() {
+        val section = container(text("a"), container(text("b"), text("c")))
+        val envelope = envelope(gallery(text("title"), section).put("item_spacing", 4))
+
+        val items = galleryOf(LazySections.virtualize(envelope)).getJSONArray("items")
+
+        assertEquals(listOf("title", "separator", "a", "b", "c"), typesOf(items))
+        assertEquals(4, items.getJSONObject(1).getJSONObject("height").getInt("value"))
+        assertEquals(0, galleryOf(LazySections.virtualize(envelope)).getInt("item_spacing"))
+    }
+
+    @Test
+    fun isIdempotent() {
+        val once = LazySections.virtualize(envelope(gallery(container(text("a"), text("b")))))
+
+        assertSame(once, LazySections.virtualize(once))
+    }
+
+    @Test
+    fun keepsContainersThatDrawOrLayOutDifferently() {
+        val styled = container(text("a"), text("b"))
+            .put("background", JSONArray().put(JSONObject().put("type", "solid").put("color", "#000000")))
+        val row = container(text("a"), text("b")).put("orientation", "horizontal")
+        val envelope = envelope(gallery(styled, row))
+
+        assertSame(envelope, LazySections.virtualize(envelope))
+    }
+
+    @Test
+    fun keepsWrapContentChildrenWhenTheGalleryRealigns() {
+        val narrow = text("a").put("width", JSONObject().put("type", "wrap_content"))
+        val envelope = envelope(gallery(container(narrow)).put("cross_content_alignment", "center"))
+
+        assertSame(envelope, LazySections.virtualize(envelope))
+    }
+
+    @Test
+    fun leavesPagingAndHorizontalGalleriesAlone() {
+        val paging = gallery(container(text("a"))).put("scroll_mode", "paging")
+        val horizontal = gallery(container(text("a"))).put("orientation", "horizontal")
+
+        assertSame(paging, galleryOf(LazySections.virtualize(envelope(paging))))
+        assertSame(horizontal, galleryOf(LazySections.virtualize(envelope(horizontal))))
+    }
+
+    private fun text(value: String) = JSONObject().put("type", "text").put("text", value)
+
+    private fun container(vararg items: JSONObject): JSONObject {
+        return JSONObject()
+            .put("type", "container")
+            .put("height", JSONObject().put("type", "wrap_content"))
+            .put("items", JSONArray(items.toList()))
+    }
+
+    private fun gallery(vararg items: JSONObject): JSONObject {
+        return JSONObject()
+            .put("type", "gallery")
+            .put("orientation", "vertical")
+            .put("items", JSONArray(items.toList()))
+    }
+
+    private fun envelope(div: JSONObject): JSONObject {
+        val state = JSONObject().put("state_id", 0).put("div", div)
+        return JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject().put("log_id", "test").put("states", JSONArray().put(state)))
+    }
+
+    private fun galleryOf(envelope: JSONObject): JSONObject {
+        return envelope.getJSONObject("card").getJSONArray("states").getJSONObject(0).getJSONObject("div")
+    }
+
+    private fun typesOf(items: JSONArray): List<String> {
+        return (0 until items.length()).map { i ->
+            val item = items.getJSONObject(i)
+            item.optString("text").ifEmpty { item.getString("type") }
+        }
+    }
+}
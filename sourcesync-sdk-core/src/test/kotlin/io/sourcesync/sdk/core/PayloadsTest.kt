@@ -0,0 +1,78 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.zip.GZIPOutputStream
+
+class PayloadsTest {
+    private val envelope = JSONObject()
+        .put("templates", JSONObject())
+        .put("card", JSONObject().put("log_id", "compressed").put("text", "line\nbreak"))
+
+    @Test
+    fun detectsGzipFromTheFirstBytes() {
+        val parsed = Payloads.readJson(ByteArrayInputStream(gzip(envelope.toString())))
+
+        assertEquals("compressed", parsed.getJSONObject("card").getString("log_id"))
+        assertEquals("line\nbreak", parsed.getJSONObject("card").getString("text"))
+    }
+
+    @Test
+    fun readsPlainJsonAsIs() {
+        val parsed = Payloads.readJson(ByteArrayInputStream(envelope.toString(2).toByteArray()))
+
+        assertEquals(envelope.toString(), parsed.toString())
+    }
+
+    @Test
+    fun readsCompressedFilesByName() {
+        val file = File.createTempFile("envelope", ".json.gz")
+        try {
+            file.writeBytes(gzip(envelope.toString()))
+            assertEquals(envelope.toString(), Payloads.readJson(file).toString())
+        } finally {
+            file.delete()
+        }
+    }
+
+    @Test(expected = IOException::class)
+    fun rejectsZstdWithAClearError() {
+        val frame = byteArrayOf(0x28, 0xb5.toByte(), 0x2f, 0xfd.toByte(), 0, 0)
+        Payloads.readJson(ByteArrayInputStream(frame))
+    }
+
+    @Test
+    fun closesStreamOfRejectedPayload() {
+        var closed = false
+        val frame = object : ByteArrayInputStream(byteArrayOf(0x28, 0xb5.toByte(), 0x2f, 0xfd.toByte(), 0, 0)) {
+            override fun close() {
+                closed = true
+            }
+        }
+
+        assertThrows(IOException::class.java) { Payloads.readJson(frame) }
+        assertTrue(closed)
+    }
+
+    @Test
+    fun mapsContentEncodingsAndFileNames() {
+        assertEquals(Payloads.Encoding.GZIP, Payloads.encodingOf("gzip"))
+        assertEquals(Payloads.Encoding.BROTLI, Payloads.encodingOf("details.json.br"))
+        assertEquals(Payloads.Encoding.ZSTD, Payloads.encodingOf("zstd"))
+        assertNull(Payloads.encodingOf("details.json"))
+    }
+
+    private fun gzip(text: String): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        GZIPOutputStream(bytes).use { it.write(text.toByteArray()) }
+        return bytes.toByteArray()
+    }
+}
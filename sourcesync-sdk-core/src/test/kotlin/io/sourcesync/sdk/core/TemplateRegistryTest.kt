@@ -0,0 +1,81 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONException
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TemplateRegistryTest {
+    private val card = JSONObject().put("log_id", "test")
+
+    @After
+    fun tearDown() {
+        TemplateRegistry.clear()
+    }
+
+    @Test
+    fun resolvesReferencesNextToEmbeddedTemplates() {
+        val title = text(18)
+        val hash = TemplateRegistry.register("title", title)
+        val envelope = JSONObject()
+            .put("templates", JSONObject().put("body", text(14)))
+            .put(TemplateRegistry.REFS_KEY, JSONObject().put("title", hash))
+            .put("card", card)
+
+        val templates = TemplateRegistry.resolve(Envelope.split(envelope))
+
+        assertSame(title, templates.getJSONObject("title"))
+        assertEquals(14, templates.getJSONObject("body").getInt("font_size"))
+    }
+
+    @Test(expected = JSONException::class)
+    fun failsOnUnknownReferences() {
+        val envelope = JSONObject()
+            .put(TemplateRegistry.REFS_KEY, JSONObject().put("title", "0000"))
+            .put("card", card)
+
+        TemplateRegistry.resolve(Envelope.split(envelope))
+    }
+
+    @Test
+    fun stripsRegisteredTemplatesOnly() {
+        TemplateRegistry.register("title", text(18))
+        val envelope = JSONObject()
+            .put("templates", JSONObject().put("title", text(18)).put("body", text(14)))
+            .put("card", card)
+
+        val stripped = TemplateRegistry.strip(envelope)
+
+        assertEquals(setOf("body"), stripped.getJSONObject("templates").keySet())
+        assertEquals(setOf("title"), stripped.getJSONObject(TemplateRegistry.REFS_KEY).keySet())
+        // JSONObject is a HashMap, so toString() order depends on how it was built
+        val expected = TemplateRegistry.resolve(Envelope.split(envelope))
+        val resolved = TemplateRegistry.resolve(Envelope.split(stripped))
+        assertEquals(expected.keySet(), resolved.keySet())
+        for (name in expected.keySet()) {
+            assertTrue(name, expected.getJSONObject(name).similar(resolved.getJSONObject(name)))
+        }
+    }
+
+    @Test
+    fun internKeysFollowTheTemplatesBuiltOn() {
+        val button = JSONObject().put("type", "title").put("font_weight", "bold")
+        val first = JSONObject().put("title", text(18)).put("button", button)
+        val second = JSONObject().put("title", text(20)).put("button", button)
+
+        val firstKeys = TemplateRegistry.internKeys(first)
+        val secondKeys = TemplateRegistry.internKeys(second)
+
+        assertNotEquals(firstKeys["title"], secondKeys["title"])
+        assertNotEquals(firstKeys["button"], secondKeys["button"])
+        assertEquals(firstKeys, TemplateRegistry.internKeys(JSONObject(first.toString())))
+    }
+
+    private fun text(fontSize: Int): JSONObject {
+        return JSONObject().put("type", "text").put("font_size", fontSize).put("\$text", "value")
+    }
+}
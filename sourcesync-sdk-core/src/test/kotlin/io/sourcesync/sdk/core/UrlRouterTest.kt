@@ -0,0 +1,35 @@
+package io.sourcesync.sdk.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class UrlRouterTest {
+    @Test
+    fun routesDivActions() {
+        assertEquals(UrlRoute.CLOSE, UrlRouter.route("div-action://close"))
+        assertEquals(UrlRoute.CLOSE, UrlRouter.route("DIV-ACTION://Close?reason=tap"))
+        assertEquals(UrlRoute.CLOSE, UrlRouter.route("div-action:///close"))
+        assertEquals(UrlRoute.REFRESH, UrlRouter.route("div-action://refresh"))
+        assertEquals(UrlRoute.BACK, UrlRouter.route("div-action://user@back:80"))
+        assertEquals(UrlRoute.UNKNOWN_DIV_ACTION, UrlRouter.route("div-action:close"))
+        assertEquals(UrlRoute.UNKNOWN_DIV_ACTION, UrlRouter.route("div-action://set_state?state_id=0/1"))
+    }
+
+    @Test
+    fun routesOtherSchemes() {
+        assertEquals(UrlRoute.EXTERNAL, UrlRouter.route("HTTPS://sourcesync.io"))
+        assertEquals(UrlRoute.MAILTO, UrlRouter.route("mailto:dev@sourcesync.io"))
+        assertEquals(UrlRoute.TEL, UrlRouter.route("tel:+15555550100"))
+        assertEquals(UrlRoute.SMS, UrlRouter.route("sms:+15555550100"))
+        assertEquals(UrlRoute.CUSTOM, UrlRouter.route("myapp://activation/42"))
+    }
+
+    @Test
+    fun leavesUnusableUrlsUnhandled() {
+        assertEquals(UrlRoute.UNHANDLED, UrlRouter.route("relative/path:1"))
+        assertEquals(UrlRoute.UNHANDLED, UrlRouter.route("http:/missing-slash"))
+        assertEquals(UrlRoute.UNHANDLED, UrlRouter.route(":nothing"))
+        assertNull(UrlRouter.schemeOf("?a=b:c"))
+    }
+}
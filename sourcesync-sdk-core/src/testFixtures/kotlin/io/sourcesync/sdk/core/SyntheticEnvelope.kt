@@ -0,0 +1,131 @@
+package io.sourcesync.sdk.core
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Generates DivKit envelopes of configurable size for scaling benchmarks.
+ *
+ * The output is deterministic for a given [Spec] and shaped like the details payloads:
+ * a vertical gallery of list items, each a stack of nested containers ending in
+ * templated text, plus a row of images.
+ */
+object SyntheticEnvelope {
+
+    /**
+     * Size of a generated envelope
+     *
+     * @property templateCount Number of distinct text templates; list items cycle through them.
+     * @property listLength Number of items in the card's gallery.
+     * @property nestingDepth Containers wrapped around the text of each list item.
+     * @property imageCount Number of image divs, each with its own URL.
+     * @property imageBaseUrl Prefix of the image URLs, e.g. a local test server.
+     */
+    data class Spec(
+        val templateCount: Int = 4,
+        val listLength: Int = 10,
+        val nestingDepth: Int = 2,
+        val imageCount: Int = 4,
+        val imageBaseUrl: String = "https://example.com/images/"
+    ) {
+        init {
+            require(templateCount > 0) { "templateCount must be positive" }
+            require(listLength >= 0 && nestingDepth >= 0 && imageCount >= 0) { "Sizes must not be negative" }
+        }
+    }
+
+    /**
+     * Specs growing roughly geometrically, from the size of the demo details to far beyond it
+     */
+    @JvmStatic
+    val LADDER: List<Spec> = listOf(
+        Spec(templateCount = 2, listLength = 5, nestingDepth = 1, imageCount = 2),
+        Spec(templateCount = 4, listLength = 20, nestingDepth = 2, imageCount = 4),
+        Spec(templateCount = 8, listLength = 80, nestingDepth = 3, imageCount = 8),
+        Spec(templateCount = 16, listLength = 320, nestingDepth = 4, imageCount = 16),
+        Spec(templateCount = 32, listLength = 1280, nestingDepth = 5, imageCount = 32)
+    )
+
+    @JvmStatic
+    fun generate(spec: Spec): JSONObject {
+        val templates = JSONObject()
+        for (t in 0 until spec.templateCount) {
+            templates.put(templateName(t), textTemplate(t))
+        }
+
+        val items = JSONArray()
+        for (i in 0 until spec.listLength) {
+            items.put(listItem(i, spec))
+        }
+
+        val root = JSONObject()
+            .put("type", "container")
+            .put("width", JSONObject().put("type", "match_parent"))
+            .put("height", JSONObject().put("type", "match_parent"))
+            .put("items", JSONArray()
+                .put(imageRow(spec))
+                .put(JSONObject()
+                    .put("type", "gallery")
+                    .put("orientation", "vertical")
+                    .put("width", JSONObject().put("type", "match_parent"))
+                    .put("height", JSONObject().put("type", "match_parent"))
+                    .put("items", items)))
+
+        val card = JSONObject()
+            .put("log_id", "synthetic_${spec.templateCount}_${spec.listLength}_${spec.nestingDepth}_${spec.imageCount}")
+            .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", root)))
+
+        return JSONObject().put("templates", templates).put("card", card)
+    }
+
+    private fun templateName(index: Int) = "synthetic_text_$index"
+
+    private fun textTemplate(index: Int): JSONObject {
+        return JSONObject()
+            .put("type", "text")
+            .put("font_size", 14 + index % 6)
+            .put("\$text", "title")
+            .put("\$text_color", "title_color")
+            .put("margins", JSONObject().put("left", 16).put("right", 16).put("top", 4))
+            .put("paddings", JSONObject().put("top", 8).put("bottom", 8))
+            .put("border", JSONObject().put("corner_radius", 8))
+            .put("background", JSONArray().put(JSONObject().put("type", "solid").put("\$color", "background_color")))
+    }
+
+    private fun listItem(index: Int, spec: Spec): JSONObject {
+        var div = JSONObject()
+            .put("type", templateName(index % spec.templateCount))
+            .put("title", "Item $index")
+            .put("title_color", "#FFFFFF")
+            .put("background_color", if (index % 2 == 0) "#1F1F1F" else "#2B2B2B")
+            .put("action", JSONObject().put("log_id", "item_$index").put("url", "https://example.com/items/$index"))
+
+        for (level in 0 until spec.nestingDepth) {
+            div = JSONObject()
+                .put("type", "container")
+                .put("orientation", if (level % 2 == 0) "vertical" else "horizontal")
+                .put("width", JSONObject().put("type", "match_parent"))
+                .put("height", JSONObject().put("type", "wrap_content"))
+                .put("items", JSONArray().put(div))
+        }
+        return div
+    }
+
+    private fun imageRow(spec: Spec): JSONObject {
+        val images = JSONArray()
+        for (i in 0 until spec.imageCount) {
+            images.put(JSONObject()
+                .put("type", "image")
+                .put("image_url", "${spec.imageBaseUrl}$i.png")
+                .put("width", JSONObject().put("type", "fixed").put("value", 96))
+                .put("height", JSONObject().put("type", "fixed").put("value", 96))
+                .put("scale", "fill"))
+        }
+        return JSONObject()
+            .put("type", "gallery")
+            .put("orientation", "horizontal")
+            .put("width", JSONObject().put("type", "match_parent"))
+            .put("height", JSONObject().put("type", "wrap_content"))
+            .put("items", images)
+    }
+}
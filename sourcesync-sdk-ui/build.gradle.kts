@@ -14,6 +14,9 @@ android {
 
     defaultConfig {
         minSdk = 24
+
+        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        consumerProguardFiles("consumer-rules.pro")
     }
 
     buildTypes {
@@ -26,6 +29,30 @@ android {
         sourceCompatibility = JavaVersion.VERSION_17
         targetCompatibility = JavaVersion.VERSION_17
     }
+
+    // The render benchmark drives the demo envelopes under Robolectric
+    sourceSets {
+        getByName("test") {
+            resources.srcDir("../demo-mobile/src/main/assets")
+        }
+    }
+
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            all { test ->
+                // The render benchmark only runs when asked for, so the default run never depends on
+                // the timing of the machine: ./gradlew :sourcesync-sdk-ui:testDebugUnitTest -PrenderBenchmark
+                val updateBaseline = project.hasProperty("updateRenderBaseline")
+                if (!project.hasProperty("renderBenchmark") && !updateBaseline) {
+                    test.exclude("**/RenderBenchmarkTest*")
+                }
+                test.systemProperty("sourcesync.renderBaseline", file("render-baseline.properties").absolutePath)
+                // ./gradlew :sourcesync-sdk-ui:testDebugUnitTest -PupdateRenderBaseline
+                test.systemProperty("sourcesync.updateRenderBaseline", updateBaseline.toString())
+            }
+        }
+    }
 }
 
 tasks.withType<KotlinCompile>().configureEach {
@@ -33,15 +60,28 @@ tasks.withType<KotlinCompile>().configureEach {
 }
 
 dependencies {
+    api(project(":sourcesync-sdk-core"))
+
     implementation(libs.androidx.appcompat)
     implementation(libs.material)
     implementation(libs.picasso)
+    implementation(libs.androidx.startup)
 
     implementation(libs.div.core)
     implementation(libs.div.main)
     implementation(libs.div.json)
 
+    // Only needed by apps that use ActivationCardPresenter
+    compileOnly(libs.androidx.leanback)
+
     testImplementation(libs.kotlin.test)
+    testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.mockwebserver)
+    testImplementation(libs.androidx.leanback)
+    androidTestImplementation(testFixtures(project(":sourcesync-sdk-core")))
+    androidTestImplementation(libs.androidx.junit)
+    androidTestImplementation(libs.mockwebserver)
 }
 
 mavenPublishing {
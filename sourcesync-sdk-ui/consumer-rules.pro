@@ -0,0 +1,5 @@
+# Optional dependencies, only present when the app adds them
+# Brotli envelopes, see Payloads in sourcesync-sdk-core
+-dontwarn org.brotli.dec.**
+# ActivationCardPresenter, for Android TV apps
+-dontwarn androidx.leanback.**
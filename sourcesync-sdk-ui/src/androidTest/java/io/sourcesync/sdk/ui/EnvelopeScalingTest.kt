@@ -0,0 +1,195 @@
+package io.sourcesync.sdk.ui
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import android.view.ContextThemeWrapper
+import android.view.View
+import android.view.ViewGroup
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.yandex.div.DivDataTag
+import com.yandex.div.core.Div2Context
+import com.yandex.div.core.DivConfiguration
+import com.yandex.div.core.view2.Div2View
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.core.LazySections
+import io.sourcesync.sdk.core.SyntheticEnvelope
+import io.sourcesync.sdk.ui.utils.LayoutUtils.asTemplateAndCardParsed
+import io.sourcesync.sdk.ui.utils.PicassoDivImageLoader
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Charts parse time, inflate time and retained heap against envelope size.
+ *
+ * Runs [SyntheticEnvelope.LADDER] on a device and logs one row per size under [TAG].
+ * Fails when the cost per KB of the largest envelope grows past [SCALING_TOLERANCE]
+ * times that of a mid-sized one, which points at non-linear work in
+ * `asTemplateAndCardParsed` or `Div2View.setData`.
+ *
+ * With [LazySections] applied, bind time and view count must not grow with the length
+ * of a section at all.
+ */
+@RunWith(AndroidJUnit4::class)
+class EnvelopeScalingTest {
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private val context: Context = instrumentation.targetContext
+
+    private data class Row(
+        val spec: SyntheticEnvelope.Spec,
+        val sizeKb: Double,
+        val parseMs: Double,
+        val inflateMs: Double,
+        val heapKb: Long
+    )
+
+    @Test
+    fun costGrowsLinearlyWithEnvelopeSize() {
+        val divContext = createDivContext()
+        val rows = SyntheticEnvelope.LADDER.mapIndexed { index, spec -> measure(index, spec, divContext) }
+
+        Log.i(TAG, "size_kb,parse_ms,inflate_ms,heap_kb,templates,list,depth,images")
+        rows.forEach {
+            Log.i(TAG, "%.1f,%.2f,%.2f,%d,%d,%d,%d,%d".format(
+                it.sizeKb, it.parseMs, it.inflateMs, it.heapKb,
+                it.spec.templateCount, it.spec.listLength, it.spec.nestingDepth, it.spec.imageCount
+            ))
+        }
+
+        // The smallest rung is dominated by fixed costs, so compare against the second one
+        val reference = rows[1]
+        val largest = rows.last()
+        assertLinear("parse", reference.parseMs / reference.sizeKb, largest.parseMs / largest.sizeKb)
+        assertLinear("inflate", reference.inflateMs / reference.sizeKb, largest.inflateMs / largest.sizeKb)
+    }
+
+    @Test
+    fun lazySectionsBindOnlyTheViewport() {
+        val divContext = createDivContext()
+        val short = bindSection(SyntheticEnvelope.Spec(listLength = 80), divContext)
+        val long = bindSection(SyntheticEnvelope.Spec(listLength = 1280), divContext)
+        Log.i(TAG, "lazy section: ${short.first} views in %.2f ms, ${long.first} views in %.2f ms"
+            .format(short.second, long.second))
+
+        assertTrue("View count grew from ${short.first} to ${long.first}", long.first <= short.first)
+        assertTrue(
+            "Bind time grew from %.2f ms to %.2f ms".format(short.second, long.second),
+            long.second <= short.second * SCALING_TOLERANCE
+        )
+    }
+
+    // Binds the spec's list as one section of the gallery; returns views and median bind time
+    private fun bindSection(spec: SyntheticEnvelope.Spec, divContext: Div2Context): Pair<Int, Double> {
+        val json = SyntheticEnvelope.generate(spec)
+        val root = json.getJSONObject("card").getJSONArray("states").getJSONObject(0).getJSONObject("div")
+        val gallery = root.getJSONArray("items").getJSONObject(1)
+        val section = JSONObject().put("type", "container").put("items", gallery.getJSONArray("items"))
+        gallery.put("items", JSONArray().put(section))
+        val data = LazySections.virtualize(json).asTemplateAndCardParsed()
+
+        var views = 0
+        val bindMs = median(REPETITIONS) { repetition ->
+            var elapsed = 0L
+            instrumentation.runOnMainSync {
+                val start = SystemClock.elapsedRealtimeNanos()
+                val divView = Div2View(divContext)
+                divView.setData(data, DivDataTag("lazy_${spec.listLength}_$repetition"))
+                divView.measure(
+                    View.MeasureSpec.makeMeasureSpec(VIEWPORT_WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(VIEWPORT_HEIGHT, View.MeasureSpec.EXACTLY)
+                )
+                divView.layout(0, 0, VIEWPORT_WIDTH, VIEWPORT_HEIGHT)
+                elapsed = SystemClock.elapsedRealtimeNanos() - start
+                views = countViews(divView)
+                divView.cleanup()
+            }
+            elapsed
+        }
+        return views to bindMs
+    }
+
+    private fun countViews(view: View): Int {
+        if (view !is ViewGroup) {
+            return 1
+        }
+        return 1 + (0 until view.childCount).sumOf { countViews(view.getChildAt(it)) }
+    }
+
+    private fun measure(index: Int, spec: SyntheticEnvelope.Spec, divContext: Div2Context): Row {
+        val json = SyntheticEnvelope.generate(spec)
+        val sizeKb = json.toString().length / 1024.0
+
+        var data: DivData? = null
+        val parseMs = median(REPETITIONS) {
+            data = json.asTemplateAndCardParsed()
+        }
+
+        var heapKb = 0L
+        val inflateMs = median(REPETITIONS) { repetition ->
+            var elapsed = 0L
+            instrumentation.runOnMainSync {
+                val before = usedHeap()
+                val start = SystemClock.elapsedRealtimeNanos()
+                val divView = Div2View(divContext)
+                divView.setData(data!!, DivDataTag("synthetic_${index}_$repetition"))
+                divView.measure(
+                    View.MeasureSpec.makeMeasureSpec(VIEWPORT_WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(VIEWPORT_HEIGHT, View.MeasureSpec.EXACTLY)
+                )
+                divView.layout(0, 0, VIEWPORT_WIDTH, VIEWPORT_HEIGHT)
+                elapsed = SystemClock.elapsedRealtimeNanos() - start
+                heapKb = maxOf(heapKb, (usedHeap() - before) / 1024)
+                divView.cleanup()
+            }
+            elapsed
+        }
+
+        return Row(spec, sizeKb, parseMs, inflateMs, heapKb)
+    }
+
+    private fun createDivContext(): Div2Context {
+        var divContext: Div2Context? = null
+        instrumentation.runOnMainSync {
+            divContext = Div2Context(
+                baseContext = ContextThemeWrapper(context, context.applicationInfo.theme),
+                configuration = DivConfiguration.Builder(PicassoDivImageLoader(context)).build()
+            )
+        }
+        return divContext!!
+    }
+
+    // Median over timed runs in milliseconds, after one warm-up run
+    private fun median(times: Int, block: (Int) -> Any?): Double {
+        block(-1)
+        val samples = (0 until times).map { repetition ->
+            val start = SystemClock.elapsedRealtimeNanos()
+            val measured = block(repetition)
+            (measured as? Long) ?: (SystemClock.elapsedRealtimeNanos() - start)
+        }.sorted()
+        return samples[times / 2] / 1_000_000.0
+    }
+
+    private fun usedHeap(): Long {
+        Runtime.getRuntime().gc()
+        return Runtime.getRuntime().let { it.totalMemory() - it.freeMemory() }
+    }
+
+    private fun assertLinear(phase: String, referencePerKb: Double, largestPerKb: Double) {
+        assertTrue(
+            "$phase cost per KB grew from %.3f ms to %.3f ms".format(referencePerKb, largestPerKb),
+            largestPerKb <= referencePerKb * SCALING_TOLERANCE
+        )
+    }
+
+    companion object {
+        private const val TAG = "EnvelopeScaling"
+        private const val REPETITIONS = 5
+        private const val SCALING_TOLERANCE = 3.0
+        private const val VIEWPORT_WIDTH = 1920
+        private const val VIEWPORT_HEIGHT = 1080
+    }
+}
@@ -0,0 +1,150 @@
+package io.sourcesync.sdk.ui
+
+import android.graphics.Bitmap
+import android.util.Log
+import androidx.test.core.app.ActivityScenario
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import io.sourcesync.sdk.core.SyntheticEnvelope
+import io.sourcesync.sdk.ui.utils.SharedHttp
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+import java.io.File
+
+/**
+ * Opens and closes details [CYCLES] times and checks that nothing accumulates.
+ *
+ * Images come from a local [MockWebServer]. Retained heap, live threads, open file
+ * descriptors and pooled OkHttp connections are sampled after a warm-up and at the end,
+ * and must not grow past small fixed allowances. The main thread runs under
+ * [StrictMainThreadRule] throughout.
+ */
+@RunWith(AndroidJUnit4::class)
+class SoakTest {
+    @get:Rule
+    val strictMode = StrictMainThreadRule()
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private lateinit var server: MockWebServer
+
+    private data class Sample(
+        val heapKb: Long,
+        val threads: Int,
+        val fileDescriptors: Int,
+        val connections: Int
+    )
+
+    @Before
+    fun setUp() {
+        val png = pngBytes()
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                return MockResponse()
+                    .setHeader("Content-Type", "image/png")
+                    .setHeader("Cache-Control", "max-age=3600")
+                    .setBody(Buffer().write(png))
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun repeatedDetailsCyclesStayFlat() {
+        val imageBaseUrl = server.url("/images/").toString()
+        val preview = SyntheticEnvelope.generate(
+            SyntheticEnvelope.Spec(templateCount = 1, listLength = 1, nestingDepth = 1, imageCount = 1, imageBaseUrl = imageBaseUrl)
+        )
+        val details = SyntheticEnvelope.generate(
+            SyntheticEnvelope.Spec(templateCount = 4, listLength = 20, nestingDepth = 2, imageCount = 6, imageBaseUrl = imageBaseUrl)
+        )
+
+        ActivityScenario.launch(TestHostActivity::class.java).use { scenario ->
+            strictMode.arm()
+            var baseline: Sample? = null
+            for (cycle in 0 until CYCLES) {
+                scenario.onActivity { activity ->
+                    val view = activity.activationView
+                    view.showPreview(preview, 0.3f, 0.2f) {}
+                    view.showDetail(details, 1f, 1f, null)
+                }
+                instrumentation.waitForIdleSync()
+                scenario.onActivity { it.activationView.hideDetails() }
+                instrumentation.waitForIdleSync()
+
+                if (cycle == WARMUP_CYCLES) {
+                    baseline = sample()
+                    Log.i(TAG, "Baseline after $cycle cycles: $baseline")
+                }
+            }
+            scenario.onActivity { it.activationView.cleanup() }
+            instrumentation.waitForIdleSync()
+
+            val start = baseline!!
+            val end = sample()
+            Log.i(TAG, "After $CYCLES cycles: $end, image requests: ${server.requestCount}")
+
+            assertTrue("Heap grew from ${start.heapKb} KB to ${end.heapKb} KB",
+                end.heapKb - start.heapKb <= MAX_HEAP_GROWTH_KB)
+            assertTrue("Threads grew from ${start.threads} to ${end.threads}",
+                end.threads - start.threads <= MAX_THREAD_GROWTH)
+            assertTrue("File descriptors grew from ${start.fileDescriptors} to ${end.fileDescriptors}",
+                end.fileDescriptors - start.fileDescriptors <= MAX_FD_GROWTH)
+            assertTrue("OkHttp connections grew from ${start.connections} to ${end.connections}",
+                end.connections <= maxOf(start.connections, MAX_CONNECTIONS))
+        }
+    }
+
+    private fun sample(): Sample {
+        // Let deferred view cleanup finish before measuring
+        instrumentation.waitForIdleSync()
+        repeat(3) {
+            Runtime.getRuntime().gc()
+            System.runFinalization()
+        }
+        val runtime = Runtime.getRuntime()
+        return Sample(
+            heapKb = (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+            threads = Thread.getAllStackTraces().size,
+            fileDescriptors = File("/proc/self/fd").list()?.size ?: 0,
+            connections = SharedHttp.connectionCount
+        )
+    }
+
+    private fun pngBytes(): ByteArray {
+        val bitmap = Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)
+        bitmap.eraseColor(0xFF3366CC.toInt())
+        return ByteArrayOutputStream().use { out ->
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+            out.toByteArray()
+        }
+    }
+
+    companion object {
+        private const val TAG = "SoakTest"
+        private const val CYCLES = 10_000
+        private const val WARMUP_CYCLES = 200
+
+        private const val MAX_HEAP_GROWTH_KB = 4 * 1024L
+        private const val MAX_THREAD_GROWTH = 2
+        private const val MAX_FD_GROWTH = 8
+
+        // OkHttp keeps at most five idle connections per pool
+        private const val MAX_CONNECTIONS = 5
+    }
+}
@@ -0,0 +1,44 @@
+package io.sourcesync.sdk.ui
+
+import android.os.Build
+import android.os.StrictMode
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.rules.ExternalResource
+
+/**
+ * Kills the process on any disk or network access from the main thread.
+ *
+ * Call [arm] once the host activity is up, so that only SDK work is checked and not
+ * the framework's own activity start. The previous policy is restored after the test.
+ */
+class StrictMainThreadRule : ExternalResource() {
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private var previous: StrictMode.ThreadPolicy? = null
+
+    fun arm() {
+        instrumentation.runOnMainSync {
+            previous = StrictMode.getThreadPolicy()
+            StrictMode.setThreadPolicy(
+                StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork()
+                    .apply {
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                            detectUnbufferedIo()
+                        }
+                    }
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build()
+            )
+        }
+    }
+
+    override fun after() {
+        previous?.let { policy ->
+            instrumentation.runOnMainSync { StrictMode.setThreadPolicy(policy) }
+        }
+        previous = null
+    }
+}
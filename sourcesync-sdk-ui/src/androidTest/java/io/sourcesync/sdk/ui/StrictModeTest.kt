@@ -0,0 +1,102 @@
+package io.sourcesync.sdk.ui
+
+import android.graphics.Bitmap
+import androidx.test.core.app.ActivityScenario
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import io.sourcesync.sdk.core.SyntheticEnvelope
+import io.sourcesync.sdk.ui.utils.createDivUrlHandler
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.ByteArrayOutputStream
+
+/**
+ * Runs the SDK's main-thread paths under a StrictMode policy that kills the process
+ * on disk or network access, see [StrictMainThreadRule].
+ */
+@RunWith(AndroidJUnit4::class)
+class StrictModeTest {
+    @get:Rule
+    val strictMode = StrictMainThreadRule()
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        val png = ByteArrayOutputStream().use { out ->
+            Bitmap.createBitmap(32, 32, Bitmap.Config.ARGB_8888).compress(Bitmap.CompressFormat.PNG, 100, out)
+            out.toByteArray()
+        }
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                return MockResponse().setHeader("Content-Type", "image/png").setBody(Buffer().write(png))
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun showAndHideDoNoMainThreadIo() {
+        val spec = SyntheticEnvelope.Spec(imageCount = 4, imageBaseUrl = server.url("/images/").toString())
+        val preview = SyntheticEnvelope.generate(spec.copy(listLength = 1))
+        val details = SyntheticEnvelope.generate(spec)
+
+        ActivityScenario.launch(TestHostActivity::class.java).use { scenario ->
+            strictMode.arm()
+
+            scenario.onActivity { it.activationView.showPreview(preview, 0.3f, 0.2f) {} }
+            awaitImages(1)
+            scenario.onActivity { it.activationView.showDetail(details, 1f, 1f, null) }
+            awaitImages(spec.imageCount)
+            scenario.onActivity { it.activationView.hideDetails() }
+            instrumentation.waitForIdleSync()
+            scenario.onActivity { it.activationView.cleanup() }
+            instrumentation.waitForIdleSync()
+        }
+    }
+
+    @Test
+    fun urlHandlingDoesNoMainThreadIo() {
+        val context = instrumentation.targetContext
+        var closed = false
+        val handler = context.createDivUrlHandler(onCloseAction = { closed = true })
+
+        strictMode.arm()
+        instrumentation.runOnMainSync {
+            handler.handleUrl("div-action://close")
+            // No app handles this scheme, so the start fails without a resolve call
+            handler.handleUrl("sourcesync-test://nowhere")
+        }
+        assertTrue(closed)
+    }
+
+    private fun awaitImages(count: Int) {
+        val deadline = System.currentTimeMillis() + TIMEOUT_MS
+        while (server.requestCount < count && System.currentTimeMillis() < deadline) {
+            instrumentation.waitForIdleSync()
+            Thread.sleep(50)
+        }
+        // Let the decoded images reach their views on the main thread
+        instrumentation.waitForIdleSync()
+    }
+
+    companion object {
+        private const val TIMEOUT_MS = 10_000L
+    }
+}
@@ -0,0 +1,23 @@
+package io.sourcesync.sdk.ui
+
+import android.os.Bundle
+import android.widget.FrameLayout
+import androidx.appcompat.app.AppCompatActivity
+import io.sourcesync.sdk.ui.divkit.ActivationView
+
+/**
+ * Full screen host for an [ActivationView] in instrumented tests
+ */
+class TestHostActivity : AppCompatActivity() {
+    lateinit var activationView: ActivationView
+        private set
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        activationView = ActivationView(this)
+        setContentView(
+            activationView,
+            FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT)
+        )
+    }
+}
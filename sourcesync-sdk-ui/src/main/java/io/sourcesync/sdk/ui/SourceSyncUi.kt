@@ -0,0 +1,97 @@
+package io.sourcesync.sdk.ui
+
+import android.content.Context
+import android.os.Looper
+import android.os.SystemClock
+import android.util.Log
+import com.yandex.div.core.DivKit
+import io.sourcesync.sdk.ui.divkit.DetailsRendering
+import io.sourcesync.sdk.ui.utils.LayoutUtils.asTemplateAndCardParsed
+import io.sourcesync.sdk.ui.utils.ResourceManager
+import io.sourcesync.sdk.ui.utils.SharedHttp
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * SDK wide entry points.
+ *
+ * Nothing is set up until the first [io.sourcesync.sdk.ui.divkit.ActivationView] is created
+ * unless [warmUp] is called. [SourceSyncUiInitializer] calls it at app startup.
+ */
+object SourceSyncUi {
+    private const val TAG = "SourceSyncUi"
+
+    private val started = AtomicBoolean(false)
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    @Volatile
+    var isWarm: Boolean = false
+        private set
+
+    /**
+     * Flattens redundant containers of every envelope before it is parsed, see
+     * [io.sourcesync.sdk.core.LayoutOptimizer]. Set it before showing anything.
+     */
+    @JvmStatic
+    @Volatile
+    var optimizeLayouts: Boolean = false
+
+    /**
+     * How details envelopes are bound, see [DetailsRendering]. This is the only switch and
+     * applies to all views. Details parsed in one mode are cached apart from the other, so a
+     * change takes effect with the next details shown.
+     */
+    @JvmStatic
+    @Volatile
+    var detailsRendering: DetailsRendering = DetailsRendering.FULL
+
+    /**
+     * Prepares the image cache, OkHttp, Picasso and the DivKit component graph on a
+     * background thread once the main thread first goes idle, i.e. after the first frame.
+     * Safe to call more than once and from any thread.
+     */
+    @JvmStatic
+    fun warmUp(context: Context) {
+        if (!started.compareAndSet(false, true)) {
+            return
+        }
+        val appContext = context.applicationContext
+        val mainQueue = Looper.getMainLooper().queue
+        mainQueue.addIdleHandler {
+            ResourceManager.install(appContext)
+            scope.launch { warmUpInBackground(appContext) }
+            false
+        }
+    }
+
+    private fun warmUpInBackground(context: Context) {
+        val start = SystemClock.elapsedRealtime()
+        try {
+            SharedHttp.client(context)
+            SharedHttp.picasso(context)
+            DivKit.getInstance(context)
+
+            // Loads the DivKit parser classes
+            WARM_UP_ENVELOPE.asTemplateAndCardParsed()
+
+            isWarm = true
+            Log.d(TAG, "Warmed up in ${SystemClock.elapsedRealtime() - start} ms")
+        } catch (e: Exception) {
+            Log.w(TAG, "Warm-up failed: ${e.message}")
+        }
+    }
+
+    private val WARM_UP_ENVELOPE: JSONObject
+        get() = JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject()
+                .put("log_id", "sourcesync_warm_up")
+                .put("states", JSONArray().put(JSONObject()
+                    .put("state_id", 0)
+                    .put("div", JSONObject().put("type", "text").put("text", "")))))
+}
@@ -0,0 +1,27 @@
+package io.sourcesync.sdk.ui
+
+import android.content.Context
+import androidx.startup.Initializer
+
+/**
+ * Schedules [SourceSyncUi.warmUp] at app startup. Only an idle handler is registered
+ * here, so app cold start is not slowed down.
+ *
+ * To opt out, remove it from the merged manifest:
+ * ```
+ * <provider android:name="androidx.startup.InitializationProvider"
+ *     android:authorities="${applicationId}.androidx-startup"
+ *     tools:node="merge">
+ *     <meta-data android:name="io.sourcesync.sdk.ui.SourceSyncUiInitializer"
+ *         tools:node="remove" />
+ * </provider>
+ * ```
+ */
+class SourceSyncUiInitializer : Initializer<SourceSyncUi> {
+    override fun create(context: Context): SourceSyncUi {
+        SourceSyncUi.warmUp(context)
+        return SourceSyncUi
+    }
+
+    override fun dependencies(): List<Class<out Initializer<*>>> = emptyList()
+}
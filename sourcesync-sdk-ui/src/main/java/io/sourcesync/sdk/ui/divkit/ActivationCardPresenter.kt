@@ -0,0 +1,276 @@
+package io.sourcesync.sdk.ui.divkit
+
+import android.content.Context
+import android.util.Log
+import android.view.ContextThemeWrapper
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import androidx.leanback.widget.ListRowPresenter
+import androidx.leanback.widget.ObjectAdapter
+import androidx.leanback.widget.Presenter
+import com.yandex.div.DivDataTag
+import com.yandex.div.core.Div2Context
+import com.yandex.div.core.DivConfiguration
+import com.yandex.div.core.view2.Div2View
+import io.sourcesync.sdk.ui.utils.ActivationDataCache
+import io.sourcesync.sdk.ui.utils.DeferredCleanup
+import io.sourcesync.sdk.ui.utils.FrameScheduler
+import io.sourcesync.sdk.ui.utils.PicassoDivImageLoader
+import io.sourcesync.sdk.ui.utils.SharedViewPool
+import io.sourcesync.sdk.ui.utils.createDivUrlHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.json.JSONObject
+import java.util.Collections
+import java.util.WeakHashMap
+
+/**
+ * Leanback [Presenter] that renders activation envelopes as cards inside
+ * BrowseSupportFragment rows.
+ *
+ * Items bound by this presenter are activation envelopes ([JSONObject] with
+ * `templates` and `card`). All cards share one [Div2Context], view holders are
+ * recycled by the row, and a holder that is rebound to the envelope it already
+ * shows skips [Div2View.setData]. D-pad focus is kept on the card itself, so
+ * moving focus never rebinds DivKit content.
+ *
+ * Call [prefetchAround] from the fragment's item selection listener to parse the
+ * envelopes next to the focused card and bind them to spare [Div2View]s in idle
+ * frame time. A holder bound to one of those envelopes takes the spare view over
+ * instead of binding its own.
+ *
+ * @param cardWidth Card width in pixels, or a [ViewGroup.LayoutParams] constant.
+ * @param cardHeight Card height in pixels, or a [ViewGroup.LayoutParams] constant.
+ * @param prefetchDistance Number of cards on each side of the focused one to bind ahead.
+ * @param divConfiguration Configuration for all cards, or null to use the SDK default.
+ */
+open class ActivationCardPresenter @JvmOverloads constructor(
+    private val cardWidth: Int = ViewGroup.LayoutParams.WRAP_CONTENT,
+    private val cardHeight: Int = ViewGroup.LayoutParams.WRAP_CONTENT,
+    private val prefetchDistance: Int = DEFAULT_PREFETCH_DISTANCE,
+    private val divConfiguration: DivConfiguration? = null
+) : Presenter() {
+    private val prefetchScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private var divContext: Div2Context? = null
+    private var ownImageLoader: PicassoDivImageLoader? = null
+    private var prefetchJob: Job? = null
+
+    // Holders created by this presenter, to skip pre-binding cards they already show
+    private val holders = Collections.newSetFromMap(WeakHashMap<CardViewHolder, Boolean>())
+
+    // Spare views bound ahead to cards next to the focused one, by envelope key, oldest first
+    private val prebound = LinkedHashMap<String, Div2View>()
+    private val maxPrebound = (prefetchDistance * 2).coerceAtLeast(1)
+    private val pendingPrebinds = ArrayList<FrameScheduler.Handle>()
+
+    internal val preboundCount: Int
+        get() = prebound.size
+
+    /**
+     * View holder keeping the card's [Div2View] and the key of the envelope bound to it
+     */
+    class CardViewHolder(
+        view: FrameLayout,
+        divView: Div2View
+    ) : Presenter.ViewHolder(view) {
+        var divView: Div2View = divView
+            internal set
+        internal var boundKey: String? = null
+    }
+
+    override fun onCreateViewHolder(parent: ViewGroup): ViewHolder {
+        val divView = Div2View(obtainDivContext(parent.context))
+
+        val card = FrameLayout(parent.context).apply {
+            layoutParams = ViewGroup.LayoutParams(cardWidth, cardHeight)
+            isFocusable = true
+            isFocusableInTouchMode = true
+            // Keep D-pad focus on the card so DivKit children never steal it
+            descendantFocusability = ViewGroup.FOCUS_BLOCK_DESCENDANTS
+            addView(divView, FrameLayout.LayoutParams(cardWidth, cardHeight))
+        }
+
+        return CardViewHolder(card, divView).also { holders.add(it) }
+    }
+
+    override fun onBindViewHolder(viewHolder: ViewHolder, item: Any?) {
+        val holder = viewHolder as CardViewHolder
+        val envelope = item as? JSONObject ?: run {
+            Log.w(TAG, "Unsupported item: $item")
+            return
+        }
+
+        val key = ActivationDataCache.keyOf(envelope)
+        if (holder.boundKey == key) {
+            return
+        }
+        prebound.remove(key)?.let { divView ->
+            swapIn(holder, divView)
+            holder.boundKey = key
+            return
+        }
+
+        try {
+            val data = ActivationDataCache.getOrParse(envelope)
+            FrameScheduler.runUrgent("card") {
+                holder.divView.setData(data, DivDataTag("SourceSync-ActivationCard-$key"))
+                SharedViewPool.attach(holder.divView)
+            }
+            holder.boundKey = key
+        } catch (e: Exception) {
+            Log.e(TAG, "Error binding activation card", e)
+            holder.boundKey = null
+        }
+    }
+
+    override fun onUnbindViewHolder(viewHolder: ViewHolder) {
+        // Keep the bound data: recycled holders are usually rebound to a nearby
+        // card, and rebinding the same envelope is then free.
+    }
+
+    /**
+     * Parses the envelopes within [prefetchDistance] of [position] on a background thread,
+     * then binds those no holder shows yet to spare views in idle frame time
+     *
+     * @param adapter The row adapter holding activation envelopes.
+     * @param position Adapter position of the focused card.
+     */
+    fun prefetchAround(adapter: ObjectAdapter, position: Int) {
+        val from = (position - prefetchDistance).coerceAtLeast(0)
+        val to = (position + prefetchDistance).coerceAtMost(adapter.size() - 1)
+        if (from > to) {
+            return
+        }
+
+        // Focus moved on, so do the cards around the new position first
+        cancelPrebinds()
+        val envelopes = (from..to)
+            .filter { it != position }
+            .mapNotNull { adapter.get(it) as? JSONObject }
+            .filter { envelope -> ActivationDataCache.keyOf(envelope).let { it !in prebound && !isShown(it) } }
+        if (envelopes.isEmpty()) {
+            return
+        }
+
+        prefetchJob = prefetchScope.launch {
+            val parsed = envelopes.filter { envelope ->
+                try {
+                    ActivationDataCache.getOrParse(envelope)
+                    true
+                } catch (e: Exception) {
+                    Log.w(TAG, "Error prefetching activation card: ${e.message}")
+                    false
+                }
+            }
+            withContext(Dispatchers.Main) {
+                parsed.forEach { schedulePrebind(it) }
+            }
+        }
+    }
+
+    /**
+     * Sizes the shared view pool of [rowPresenter] for this presenter so that
+     * scrolling across rows reuses card views instead of inflating new ones
+     */
+    @JvmOverloads
+    fun applyTo(rowPresenter: ListRowPresenter, poolSize: Int = DEFAULT_POOL_SIZE) {
+        rowPresenter.setRecycledPoolSize(this, poolSize)
+    }
+
+    /**
+     * Cancels pending prefetch work and image loads. Call when the owning fragment is destroyed.
+     */
+    fun release() {
+        prefetchScope.cancel()
+        cancelPrebinds()
+        prebound.values.forEach { DeferredCleanup.schedule(TAG, it) }
+        prebound.clear()
+        ownImageLoader?.release()
+        ownImageLoader = null
+        divContext = null
+    }
+
+    private fun schedulePrebind(envelope: JSONObject) {
+        val context = divContext ?: return
+        val key = ActivationDataCache.keyOf(envelope)
+        pendingPrebinds.add(FrameScheduler.post("card-prebind", FrameScheduler.Priority.IDLE) {
+            val data = ActivationDataCache.get(envelope)
+            if (data == null || key in prebound || isShown(key)) {
+                return@post
+            }
+            try {
+                val divView = Div2View(context)
+                divView.setData(data, DivDataTag("SourceSync-ActivationCard-$key"))
+                SharedViewPool.attach(divView)
+                keepPrebound(key, divView)
+            } catch (e: Exception) {
+                Log.w(TAG, "Error pre-binding activation card: ${e.message}")
+            }
+        })
+    }
+
+    private fun cancelPrebinds() {
+        prefetchJob?.cancel()
+        prefetchJob = null
+        pendingPrebinds.forEach { it.cancel() }
+        pendingPrebinds.clear()
+    }
+
+    private fun isShown(key: String): Boolean = holders.any { it.boundKey == key }
+
+    /**
+     * Puts [divView] in the holder's card in place of its current view, which is kept as
+     * a spare for the envelope it shows, since focus often comes back to it
+     */
+    private fun swapIn(holder: CardViewHolder, divView: Div2View) {
+        val card = holder.view as FrameLayout
+        val previous = holder.divView
+        card.removeView(previous)
+        card.addView(divView, FrameLayout.LayoutParams(cardWidth, cardHeight))
+        holder.divView = divView
+
+        val previousKey = holder.boundKey
+        if (previousKey != null) {
+            keepPrebound(previousKey, previous)
+        } else {
+            DeferredCleanup.schedule(TAG, previous)
+        }
+    }
+
+    private fun keepPrebound(key: String, divView: Div2View) {
+        prebound.remove(key)?.let { DeferredCleanup.schedule(TAG, it) }
+        prebound[key] = divView
+        while (prebound.size > maxPrebound) {
+            val eldest = prebound.keys.first()
+            prebound.remove(eldest)?.let { DeferredCleanup.schedule(TAG, it) }
+        }
+    }
+
+    private fun obtainDivContext(context: Context): Div2Context {
+        divContext?.let { return it }
+
+        val themedContext = ContextThemeWrapper(
+            context,
+            context.applicationInfo.theme
+        )
+        val config = divConfiguration ?: DivConfiguration.Builder(PicassoDivImageLoader(context).also { ownImageLoader = it })
+            .actionHandler(context.createDivUrlHandler(onCloseAction = {}))
+            .build()
+
+        return Div2Context(
+            baseContext = themedContext,
+            configuration = config
+        ).also { divContext = it }
+    }
+
+    companion object {
+        private const val TAG = "ActivationCardPresenter"
+        private const val DEFAULT_PREFETCH_DISTANCE = 3
+        private const val DEFAULT_POOL_SIZE = 24
+    }
+}
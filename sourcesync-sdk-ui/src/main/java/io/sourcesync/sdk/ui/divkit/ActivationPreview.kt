@@ -10,14 +10,14 @@ import com.yandex.div.core.Div2Context
 import com.yandex.div.core.DivConfiguration
 import com.yandex.div.core.view2.Div2View
 import com.yandex.div2.DivData
-import io.sourcesync.sdk.ui.utils.LayoutUtils.forceCleanup
-import io.sourcesync.sdk.ui.utils.LayoutUtils.isSafeForCleanup
+import io.sourcesync.sdk.ui.utils.DeferredCleanup
 import io.sourcesync.sdk.ui.utils.LayoutUtils.safeCleanup
+import io.sourcesync.sdk.ui.utils.SharedViewPool
 
 @SuppressLint("ViewConstructor")
 class ActivationPreview(
     context: Context,
-    previewData: DivData,
+    private val previewData: DivData,
     config: DivConfiguration
 ) : FrameLayout(context) {
     private var divView: Div2View? = null
@@ -45,30 +45,54 @@ class ActivationPreview(
                 )
             )
 
-            divView?.setData(previewData, DivDataTag("SourceSync-ActivationPreview"))
+            divView?.setData(previewData, DivDataTag(DATA_TAG))
+            divView?.let { SharedViewPool.attach(it) }
             divView?.let { addView(it) }
         } catch (e: Exception) {
             Log.e(TAG, "Error in initializeView", e)
         }
     }
 
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        if (!DeferredCleanup.cancel(divView)) {
+            // Released while it was detached
+            rebind()
+        }
+    }
+
+    private fun rebind() {
+        try {
+            divView?.setData(previewData, DivDataTag(DATA_TAG))
+            divView?.let { SharedViewPool.attach(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error in rebind", e)
+        }
+    }
+
     override fun onDetachedFromWindow() {
         Log.d(TAG, "onDetachedFromWindow called")
 
-        if (isSafeForCleanup(TAG,divView)) {
-            safeCleanup(TAG, divView)
-        } else {
-            forceCleanup(TAG, divView)
-        }
+        // The view is already out of the hierarchy; release DivKit resources once idle
+        scheduleCleanup()
 
         super.onDetachedFromWindow()
     }
 
+    /**
+     * Queue this view's DivKit cleanup for the next idle passes of the main thread
+     */
+    fun scheduleCleanup() {
+        DeferredCleanup.schedule(TAG, divView)
+    }
+
     fun safeCleanup() {
+        DeferredCleanup.discard(divView)
         safeCleanup(TAG, divView)
     }
 
     companion object {
+        private const val DATA_TAG = "SourceSync-ActivationPreview"
         private const val TAG = "ActivationPreview"
     }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package io.sourcesync.sdk.ui.divkit
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.util.Log
+import android.view.ContextThemeWrapper
+import android.widget.FrameLayout
+import com.yandex.div.DivDataTag
+import com.yandex.div.core.Div2Context
+import com.yandex.div.core.DivConfiguration
+import com.yandex.div.core.view2.Div2View
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.ui.utils.DeferredCleanup
+import io.sourcesync.sdk.ui.utils.LayoutUtils
+import io.sourcesync.sdk.ui.utils.LayoutUtils.safeCleanup
+import io.sourcesync.sdk.ui.utils.SharedViewPool
+
+/**
+ * Single [Div2View] holding both the preview and the details of an activation as
+ * root states of one [DivData], see [io.sourcesync.sdk.ui.utils.LayoutUtils.mergeAsStates].
+ * Opening and closing details is a state switch instead of binding a second view.
+ */
+@SuppressLint("ViewConstructor")
+class ActivationStateView(
+    context: Context,
+    private val mergedData: DivData,
+    config: DivConfiguration
+) : FrameLayout(context) {
+    private var divView: Div2View? = null
+
+    /**
+     * Id of the root state currently shown
+     */
+    var currentStateId: Long = PREVIEW_STATE_ID
+        private set
+
+    init {
+        initializeView(mergedData, config)
+    }
+
+    /**
+     * Initializes the DivView with the provided data and configuration
+     * @param mergedData The DivData with preview and details states
+     * @param config The DivConfiguration to use
+     */
+    private fun initializeView(mergedData: DivData, config: DivConfiguration) {
+        try {
+            val themedContext = ContextThemeWrapper(
+                context,
+                context.applicationInfo.theme
+            )
+
+            divView = Div2View(
+                Div2Context(
+                    baseContext = themedContext,
+                    configuration = config
+                )
+            )
+
+            divView?.setData(mergedData, DivDataTag(DATA_TAG))
+            divView?.let { SharedViewPool.attach(it) }
+            divView?.let { addView(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error in initializeView", e)
+        }
+    }
+
+    /**
+     * Switches the bound data to the given root state
+     */
+    fun switchTo(stateId: Long) {
+        if (stateId == currentStateId) {
+            return
+        }
+
+        try {
+            // The state being left is dropped by DivKit; its galleries go back to the pool first
+            divView?.let { LayoutUtils.clearRecyclerViews(TAG, it) }
+            divView?.switchToState(stateId, false)
+            currentStateId = stateId
+            // Galleries of the new state were bound just now
+            divView?.let { SharedViewPool.attach(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error switching to state $stateId", e)
+        }
+    }
+
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        if (!DeferredCleanup.cancel(divView)) {
+            // Released while it was detached
+            rebind()
+        }
+    }
+
+    private fun rebind() {
+        try {
+            divView?.setData(mergedData, DivDataTag(DATA_TAG))
+            if (currentStateId != PREVIEW_STATE_ID) {
+                divView?.switchToState(currentStateId, false)
+            }
+            divView?.let { SharedViewPool.attach(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error in rebind", e)
+        }
+    }
+
+    override fun onDetachedFromWindow() {
+        Log.d(TAG, "onDetachedFromWindow called")
+
+        // The view is already out of the hierarchy; release DivKit resources once idle
+        scheduleCleanup()
+
+        super.onDetachedFromWindow()
+    }
+
+    /**
+     * Queue this view's DivKit cleanup for the next idle passes of the main thread
+     */
+    fun scheduleCleanup() {
+        DeferredCleanup.schedule(TAG, divView)
+    }
+
+    fun safeCleanup() {
+        DeferredCleanup.discard(divView)
+        safeCleanup(TAG, divView)
+    }
+
+    companion object {
+        private const val DATA_TAG = "SourceSync-ActivationState"
+        private const val TAG = "ActivationStateView"
+        const val PREVIEW_STATE_ID = 0L
+        const val DETAILS_STATE_ID = 1L
+    }
+}
@@ -0,0 +1,114 @@
+package io.sourcesync.sdk.ui.divkit
+
+import android.content.Context
+import androidx.lifecycle.ViewModel
+import androidx.lifecycle.ViewModelProvider
+import androidx.lifecycle.ViewModelStoreOwner
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.ui.utils.ActivationDataCache
+import io.sourcesync.sdk.ui.utils.PicassoDivImageLoader
+import org.json.JSONObject
+
+/**
+ * ViewModel-scoped state of an [ActivationView] that survives configuration changes.
+ *
+ * Keeps the parsed [DivData] of the shown envelopes, an image loader bound to the
+ * application context, and which of preview and details is showing. A recreated
+ * [ActivationView] restores from it via [ActivationView.retainIn] without reparsing.
+ */
+class ActivationStore : ViewModel() {
+    // Only the data of the current requests, so at most the preview and the details
+    private val retainedData = HashMap<String, DivData>()
+    private var imageLoader: PicassoDivImageLoader? = null
+
+    internal var previewRequest: PreviewRequest? = null
+        set(value) {
+            field = value
+            retainCurrent()
+        }
+    internal var detailRequest: DetailRequest? = null
+        set(value) {
+            field = value
+            retainCurrent()
+        }
+
+    /**
+     * Request whose parsed envelopes are retained while it is current
+     */
+    internal abstract class Request {
+        internal val dataKeys = HashSet<String>(2)
+    }
+
+    /**
+     * Preview shown last, with the details envelope when shown as a single view
+     */
+    internal class PreviewRequest(
+        val json: JSONObject,
+        val detailsJson: JSONObject?,
+        val widthPercentage: Float,
+        val heightPercentage: Float
+    ) : Request()
+
+    /**
+     * Details currently open
+     */
+    internal class DetailRequest(
+        val json: JSONObject,
+        val widthPercentage: Float,
+        val heightPercentage: Float
+    ) : Request()
+
+    /**
+     * Returns the retained image loader, creating it with the application context on first use
+     */
+    internal fun imageLoader(context: Context): PicassoDivImageLoader {
+        return imageLoader ?: PicassoDivImageLoader(context.applicationContext).also { imageLoader = it }
+    }
+
+    /**
+     * Returns the parsed data for an envelope of [request], keeping it for as long as the
+     * request is the current preview or detail request
+     */
+    internal fun dataFor(envelope: JSONObject, request: Request?, rendering: DetailsRendering? = null): DivData {
+        request ?: return ActivationDataCache.getOrParse(envelope, rendering)
+        val key = ActivationDataCache.keyOf(envelope, rendering)
+        request.dataKeys.add(key)
+        return retainedData.getOrPut(key) { ActivationDataCache.getOrParse(envelope, rendering) }
+    }
+
+    private fun retainCurrent() {
+        val current = HashSet<String>()
+        previewRequest?.let { current.addAll(it.dataKeys) }
+        detailRequest?.let { current.addAll(it.dataKeys) }
+        retainedData.keys.retainAll(current)
+    }
+
+    /**
+     * Forgets the retained activation, e.g. when the host moves on to other content
+     */
+    fun clear() {
+        previewRequest = null
+        detailRequest = null
+        retainedData.clear()
+    }
+
+    override fun onCleared() {
+        clear()
+        imageLoader?.release()
+        imageLoader = null
+        super.onCleared()
+    }
+
+    companion object {
+        private const val DEFAULT_KEY = "SourceSync-ActivationStore"
+
+        /**
+         * Returns the store scoped to [owner], creating it on first use
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun of(owner: ViewModelStoreOwner, key: String = DEFAULT_KEY): ActivationStore {
+            return ViewModelProvider(owner)[key, ActivationStore::class.java]
+        }
+    }
+}
@@ -1,16 +1,49 @@
 package io.sourcesync.sdk.ui.divkit
 
+import android.annotation.SuppressLint
 import android.content.Context
+import android.content.res.Configuration
+import android.os.Build
 import android.os.Handler
-import android.util.DisplayMetrics
+import android.os.SystemClock
 import android.util.Log
+import android.view.Choreographer
+import android.view.MotionEvent
+import android.view.View
+import android.view.ViewConfiguration
+import android.view.ViewGroup
 import android.view.WindowManager
 import android.widget.FrameLayout
+import android.widget.ImageView
+import androidx.lifecycle.ViewModelStoreOwner
 import com.yandex.div.core.DivConfiguration
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.core.LazySections
+import io.sourcesync.sdk.ui.SourceSyncUi
+import io.sourcesync.sdk.ui.divkit.ActivationStateView.Companion.DETAILS_STATE_ID
+import io.sourcesync.sdk.ui.divkit.ActivationStateView.Companion.PREVIEW_STATE_ID
+import io.sourcesync.sdk.ui.divkit.ActivationStore.DetailRequest
+import io.sourcesync.sdk.ui.divkit.ActivationStore.PreviewRequest
+import io.sourcesync.sdk.ui.utils.ActivationDataCache
 import io.sourcesync.sdk.ui.utils.EnhancedDivUrlHandler
-import io.sourcesync.sdk.ui.utils.LayoutUtils.asTemplateAndCardParsed
+import io.sourcesync.sdk.ui.utils.FrameScheduler
+import io.sourcesync.sdk.ui.utils.LayoutUtils.collectImageUrls
+import io.sourcesync.sdk.ui.utils.LayoutUtils.mergeAsStates
 import io.sourcesync.sdk.ui.utils.PicassoDivImageLoader
+import io.sourcesync.sdk.ui.utils.ResourceManager
+import io.sourcesync.sdk.ui.utils.SnapshotCache
 import io.sourcesync.sdk.ui.utils.createDivUrlHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import org.json.JSONException
 import org.json.JSONObject
 import kotlin.math.max
@@ -23,21 +56,90 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
     private var onDetailsCloseClicked: Runnable? = null
     private var previewView: ActivationPreview? = null
     private var detailView: ActivationDetails? = null
+    private var stateView: ActivationStateView? = null
+    private var stateDetailKey: String? = null
+    private var statePreviewParams: LayoutParams? = null
     private var onPreviewClickHandler: Runnable? = null
     private val handler = Handler()
     private lateinit var divUrlHandler: EnhancedDivUrlHandler
+    private val viewScope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
+    private var ownImageLoader: PicassoDivImageLoader? = null
+    private var store: ActivationStore? = null
+    private val imageLoader: PicassoDivImageLoader
+        get() = store?.imageLoader(context)
+            ?: ownImageLoader
+            ?: PicassoDivImageLoader(context).also { ownImageLoader = it }
 
-    // Screen dimensions
-    private val screenWidth: Int
-    private val screenHeight: Int
+    // Built once per image loader instead of once per shown view
+    private var divConfiguration: DivConfiguration? = null
+
+    /**
+     * What happens to the preview while details are open, see [PreviewRetention]
+     */
+    var previewRetention = PreviewRetention.KEEP_LIVE
+
+    // Source of the current preview, used to re-create it after details close
+    private var previewJson: JSONObject? = null
+
+    // Snapshot shown while a re-created preview binds, see addPreview()
+    private var previewCover: ImageView? = null
+    private var pendingPreviewBind: FrameScheduler.Handle? = null
+
+    // Snapshot of the bound preview taken for its next showing, see schedulePreviewCapture()
+    private var pendingPreviewCapture: FrameScheduler.Handle? = null
+
+    // Picasso tags are process-wide, so cancelling speculation must not touch other views' requests
+    private val speculationTag = Any()
+
+    // Requested sizes, re-applied when the window size changes
+    private var previewPercentages = 0f to 0f
+    private var detailPercentages = 0f to 0f
+
+    // Warm standby details, see prepareDetail()
+    private var standbyRequest: DetailRequest? = null
+    private var standbyDetail: ActivationDetails? = null
+    private var standbyKey: String? = null
+    private var standbyJob: Job? = null
+    private var tapUptime = 0L
+
+    // Speculative details, see speculateDetail()
+    private var speculativeDetail: JSONObject? = null
+    private var speculativeJob: Job? = null
+
+    // In-flight suspend requests, see show() and showDetails()
+    private var pendingPreview: Job? = null
+    private var pendingDetail: Job? = null
+
+    // Held here because ResourceManager only keeps a weak reference
+    private val memoryTrimmer = object : ResourceManager.Trimmable {
+        override val trimName: String = TAG
+
+        override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+            if (pressure == ResourceManager.Pressure.LOW) {
+                return null
+            }
+            val released = ArrayList<String>()
+            if (standbyDetail != null) {
+                released.add("standby detail view")
+            }
+            discardStandby()
+            cancelSpeculation()
+
+            // A preview hidden behind details is re-created when they close
+            previewView?.takeIf { detailView != null && it.visibility == GONE }?.let { preview ->
+                releasePreview(preview)
+                released.add("hidden preview view")
+            }
+            return released.takeIf { it.isNotEmpty() }?.joinToString()
+        }
+    }
 
     init {
-        // Get screen dimensions
-        val windowManager = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
-        val displayMetrics = DisplayMetrics()
-        windowManager.defaultDisplay.getMetrics(displayMetrics)
-        screenWidth = displayMetrics.widthPixels
-        screenHeight = displayMetrics.heightPixels
+        ResourceManager.install(context)
+        ResourceManager.register(memoryTrimmer)
+
+        // No-op when the startup initializer already ran
+        SourceSyncUi.warmUp(context)
 
         // Create the URL handler
         divUrlHandler = context.createDivUrlHandler(
@@ -53,15 +155,18 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
                 // Optional: Handle custom schemes not covered by default implementation
             }
         )
-        Log.d(TAG, "Screen dimensions: ${screenWidth}x${screenHeight}")
+        val (windowWidth, windowHeight) = windowSize()
+        Log.d(TAG, "Screen dimensions: ${windowWidth}x${windowHeight}")
     }
 
 
     private fun createDivConfiguration(): DivConfiguration {
-        return DivConfiguration.Builder(PicassoDivImageLoader(context))
+        divConfiguration?.let { return it }
+        return DivConfiguration.Builder(imageLoader)
             .actionHandler(divUrlHandler)
             .visualErrorsEnabled(true)
             .build()
+            .also { divConfiguration = it }
     }
 
     /**
@@ -79,42 +184,229 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
         heightPercentage: Float = 0f,
         onClickListener: OnClickListener
     ) {
-        // Clean up existing preview safely
-        previewView?.let { existingPreview ->
-            existingPreview.safeCleanup()
-            removeView(existingPreview)
-        }
+        cancelPendingRequests(includePreview = true)
+        resetPreview()
 
         this.onPreviewClickHandler = Runnable { onClickListener.onClick(this) }
-        val previewData = previewParentJson.asTemplateAndCardParsed()
+        val request = PreviewRequest(previewParentJson, null, widthPercentage, heightPercentage)
+        val previewData = parse(previewParentJson, request)
+        store?.previewRequest = request
+        store?.detailRequest = null
+        previewPercentages = widthPercentage to heightPercentage
+        previewJson = previewParentJson
+
+        addPreview(previewData)
+    }
+
+    /**
+     * Creates the preview view for the current preview request and adds it.
+     *
+     * When a snapshot of this preview is cached, it is added first and the view is bound in
+     * the frame slot after the snapshot has been drawn, behind it. The snapshot stays on top
+     * until the preview has been drawn and the image loader has nothing left to load.
+     */
+    private fun addPreview(previewData: DivData) {
+        val (widthPercentage, heightPercentage) = previewPercentages
+        val params = layoutParamsFor(widthPercentage, heightPercentage)
+
+        Log.d(TAG, "Preview dimensions: ${params.width}x${params.height} (${widthPercentage*100}% x ${heightPercentage*100}%)")
 
+        val snapshot = previewSnapshotKey(params)?.let { SnapshotCache.get(it) }
+        if (snapshot == null) {
+            bindPreview(previewData, params, urgent = true)
+            return
+        }
+
+        val cover = ImageView(context).apply { setImageBitmap(snapshot) }
+        addView(cover, LayoutParams(params))
+        previewCover = cover
+        pendingPreviewBind = FrameScheduler.post("preview") {
+            pendingPreviewBind = null
+            bindPreview(previewData, params, urgent = false)
+            removeCoverWhenLoaded(cover, SystemClock.uptimeMillis())
+        }
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    private fun bindPreview(previewData: DivData, params: LayoutParams, urgent: Boolean) {
         try {
-            previewView = ActivationPreview(context, previewData, createDivConfiguration())
+            // Queued binds are already metered by the scheduler
+            previewView = if (urgent) {
+                FrameScheduler.runUrgent("preview") { ActivationPreview(context, previewData, createDivConfiguration()) }
+            } else {
+                ActivationPreview(context, previewData, createDivConfiguration())
+            }
             previewView?.setOnClickListener {
                 onPreviewClickHandler?.let { handler ->
-                    previewView?.visibility = GONE
+                    tapUptime = SystemClock.uptimeMillis()
+                    hidePreviewForDetails()
                     handler.run()
                 }
             }
+            // Reachable with the D-pad, so focus can start speculation below
+            previewView?.isFocusable = true
+            // Start on touch-down or D-pad focus, the click usually follows within 100-300 ms
+            previewView?.setOnTouchListener { view, event ->
+                when (event.actionMasked) {
+                    MotionEvent.ACTION_DOWN -> startSpeculation()
+                    MotionEvent.ACTION_CANCEL -> cancelSpeculation()
+                    // Same rule as View: lifting outside the bounds plus touch slop is no click
+                    MotionEvent.ACTION_UP -> if (!isOver(view, event)) cancelSpeculation()
+                }
+                false
+            }
+            previewView?.setOnFocusChangeListener { _, hasFocus ->
+                if (hasFocus) {
+                    startSpeculation()
+                } else if (!tapPending()) {
+                    cancelSpeculation()
+                }
+            }
 
-            // Calculate dimensions based on percentage
-            val width = if (widthPercentage <= 0f) {
-                LayoutParams.WRAP_CONTENT
-            } else {
-                (max(screenWidth, screenHeight) * widthPercentage.coerceIn(0f, 1f)).toInt()
+            // Behind the snapshot cover, if there is one
+            val index = previewCover?.let { indexOfChild(it) } ?: -1
+            previewView?.let {
+                addView(it, index, params)
+                schedulePreviewCapture(it, SystemClock.uptimeMillis())
             }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error creating preview view: " + e.message)
+        }
+    }
 
-            val height = if (heightPercentage <= 0f) {
-                LayoutParams.WRAP_CONTENT
-            } else {
-                (min(screenWidth, screenHeight) * heightPercentage.coerceIn(0f, 1f)).toInt()
+    /**
+     * Removes the cover once the frame after the bind has drawn the preview and no image is
+     * loading, or after [PREVIEW_COVER_TIMEOUT_MS] if images keep loading
+     */
+    private fun removeCoverWhenLoaded(cover: ImageView, boundUptime: Long) {
+        val choreographer = Choreographer.getInstance()
+        choreographer.postFrameCallback {
+            choreographer.postFrameCallback { checkCover(cover, boundUptime) }
+        }
+    }
+
+    private fun checkCover(cover: ImageView, boundUptime: Long) {
+        if (previewCover !== cover) {
+            return
+        }
+        if (imageLoader.isIdle || SystemClock.uptimeMillis() - boundUptime >= PREVIEW_COVER_TIMEOUT_MS) {
+            removeView(cover)
+            previewCover = null
+            return
+        }
+        Choreographer.getInstance().postFrameCallback { checkCover(cover, boundUptime) }
+    }
+
+    /**
+     * Caches a rendering of the preview once it has been drawn and the image loader is idle,
+     * whatever the [previewRetention], so that showing the same preview again, after details
+     * or when it is cued again, starts from the snapshot. Gives up if images are still
+     * loading after [PREVIEW_CAPTURE_TIMEOUT_MS].
+     */
+    private fun schedulePreviewCapture(preview: ActivationPreview, boundUptime: Long) {
+        val key = previewSnapshotKey(preview.layoutParams) ?: return
+        if (SnapshotCache.get(key) != null) {
+            return
+        }
+        val choreographer = Choreographer.getInstance()
+        choreographer.postFrameCallback {
+            choreographer.postFrameCallback { checkPreviewCapture(preview, boundUptime) }
+        }
+    }
+
+    private fun checkPreviewCapture(preview: ActivationPreview, boundUptime: Long) {
+        if (previewView !== preview) {
+            return
+        }
+        if (!imageLoader.isIdle) {
+            if (SystemClock.uptimeMillis() - boundUptime < PREVIEW_CAPTURE_TIMEOUT_MS) {
+                Choreographer.getInstance().postFrameCallback { checkPreviewCapture(preview, boundUptime) }
+            }
+            return
+        }
+        // Drawing into a bitmap is not urgent, so it waits for a frame with time to spare
+        pendingPreviewCapture?.cancel()
+        pendingPreviewCapture = FrameScheduler.post("preview-snapshot", FrameScheduler.Priority.IDLE) {
+            pendingPreviewCapture = null
+            if (previewView === preview) {
+                capturePreview(preview)
             }
+        }
+    }
 
-            val params = LayoutParams(width, height)
+    private fun cancelPreviewCapture() {
+        pendingPreviewCapture?.cancel()
+        pendingPreviewCapture = null
+    }
 
-            Log.d(TAG, "Preview dimensions: ${width}x${height} (${widthPercentage*100}% x ${heightPercentage*100}%)")
+    private fun removePreviewCover() {
+        pendingPreviewBind?.cancel()
+        pendingPreviewBind = null
+        previewCover?.let { removeView(it) }
+        previewCover = null
+    }
 
-            previewView?.let { addView(it, params) }
+    /**
+     * Shows the preview and its details in a single view.
+     *
+     * Both envelopes are merged into one [com.yandex.div2.DivData] with the preview and the
+     * details as root states. A following [showDetail] with the same details envelope and
+     * [hideDetails] only switch state inside the bound view. Falls back to [showPreview]
+     * when the envelopes can't be merged.
+     *
+     * @param previewParentJson JSON data for preview.
+     * @param detailsParentJson JSON data for detail.
+     * @param onClickListener Listener to execute on click of the preview state.
+     * @param widthPercentage Preview width as percentage of screen width (0.0 to 1.0).
+     * @param heightPercentage Preview height as percentage of screen height (0.0 to 1.0).
+     */
+    @Throws(JSONException::class)
+    fun showPreviewWithDetail(
+        previewParentJson: JSONObject,
+        detailsParentJson: JSONObject,
+        widthPercentage: Float = 0f,
+        heightPercentage: Float = 0f,
+        onClickListener: OnClickListener
+    ) {
+        cancelPendingRequests(includePreview = true)
+        val rendering = SourceSyncUi.detailsRendering
+        val mergedJson = mergeAsStates(previewParentJson, detailsFor(detailsParentJson, rendering), PREVIEW_STATE_ID, DETAILS_STATE_ID)
+        if (mergedJson == null) {
+            Log.w(TAG, "Preview and details can't share one view, using separate views")
+            showPreview(previewParentJson, widthPercentage, heightPercentage, onClickListener)
+            return
+        }
+
+        resetPreview()
+
+        this.onPreviewClickHandler = Runnable { onClickListener.onClick(this) }
+        val request = PreviewRequest(previewParentJson, detailsParentJson, widthPercentage, heightPercentage)
+        store?.previewRequest = request
+        store?.detailRequest = null
+        previewPercentages = widthPercentage to heightPercentage
+
+        try {
+            val mergedData = parse(mergedJson, request)
+            val states = FrameScheduler.runUrgent("preview-with-details") {
+                ActivationStateView(context, mergedData, createDivConfiguration())
+            }
+            states.setOnClickListener {
+                if (states.currentStateId == PREVIEW_STATE_ID) {
+                    onPreviewClickHandler?.let { handler ->
+                        tapUptime = SystemClock.uptimeMillis()
+                        handler.run()
+                    }
+                }
+            }
+
+            val params = layoutParamsFor(widthPercentage, heightPercentage)
+
+            Log.d(TAG, "Preview dimensions: ${params.width}x${params.height} (${widthPercentage*100}% x ${heightPercentage*100}%)")
+
+            addView(states, params)
+            stateView = states
+            stateDetailKey = ActivationDataCache.keyOf(detailsParentJson, rendering)
+            statePreviewParams = params
         } catch (e: Exception) {
             Log.e(TAG, "Error creating preview view: " + e.message)
         }
@@ -134,41 +426,436 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
         heightPercentage: Float = 1.0f,
         onClose: Runnable?
     ) {
-        // Clean up existing detail safely
+        cancelPendingRequests(includePreview = false)
+
+        // Detach existing detail; its cleanup is deferred until the main thread is idle
         detailView?.let { existingDetail ->
-            existingDetail.safeCleanup()
             removeView(existingDetail)
+            existingDetail.scheduleCleanup()
         }
 
         this.onDetailsCloseClicked = onClose
+        val request = DetailRequest(detailsParentJson, widthPercentage, heightPercentage)
+        store?.detailRequest = request
+        detailPercentages = widthPercentage to heightPercentage
 
-        try {
-            val detailsData = detailsParentJson.asTemplateAndCardParsed()
-            detailView = ActivationDetails(context, detailsData, createDivConfiguration())
+        // Single view: the details are a state of the view already bound
+        val rendering = SourceSyncUi.detailsRendering
+        stateView?.takeIf { stateDetailKey == ActivationDataCache.keyOf(detailsParentJson, rendering) }?.let { states ->
+            states.layoutParams = layoutParamsFor(widthPercentage, heightPercentage)
+            states.switchTo(DETAILS_STATE_ID)
+            logTapToDetails()
+            return
+        }
 
-            // Calculate dimensions based on percentage
-            val width = if (widthPercentage <= 0f) {
-                LayoutParams.WRAP_CONTENT
-            } else {
-                (max(screenWidth, screenHeight) * widthPercentage.coerceIn(0f, 1f)).toInt()
-            }
+        // Warm standby: the detail view is already built, only flip visibility
+        takeStandby(detailsParentJson)?.let { standby ->
+            standby.layoutParams = layoutParamsFor(widthPercentage, heightPercentage)
+            standby.visibility = VISIBLE
+            detailView = standby
+            logTapToDetails()
+            return
+        }
 
-            val height = if (heightPercentage <= 0f) {
-                LayoutParams.WRAP_CONTENT
-            } else {
-                (min(screenWidth, screenHeight) * heightPercentage.coerceIn(0f, 1f)).toInt()
+        try {
+            val detailsData = parse(detailsParentJson, request, rendering)
+            detailView = FrameScheduler.runUrgent("details") {
+                ActivationDetails(context, detailsData, createDivConfiguration())
             }
 
-            val params = LayoutParams(width, height)
+            val params = layoutParamsFor(widthPercentage, heightPercentage)
 
-            Log.d(TAG, "Detail dimensions: ${width}x${height} (${widthPercentage*100}% x ${heightPercentage*100}%)")
+            Log.d(TAG, "Detail dimensions: ${params.width}x${params.height} (${widthPercentage*100}% x ${heightPercentage*100}%)")
 
             detailView?.let { addView(it, params) }
+            logTapToDetails()
         } catch (e: JSONException) {
             Log.e(TAG, "Error creating detail view: " + e.message)
         }
     }
 
+    /**
+     * Suspending [showPreview] for rapid activation changes, e.g. while seeking or zapping.
+     *
+     * The envelope is parsed off the main thread. A newer [show] or [showPreview] cancels
+     * this request, which then throws [kotlinx.coroutines.CancellationException] without
+     * touching the views, so only the latest activation is ever bound. A parse already
+     * running is not interrupted, its result is just dropped (and kept in the parse cache).
+     *
+     * @param previewParentJson JSON data for preview.
+     * @param onClickListener Listener to execute on click.
+     * @param widthPercentage Width as percentage of screen width (0.0 to 1.0).
+     * @param heightPercentage Height as percentage of screen height (0.0 to 1.0).
+     */
+    @Throws(JSONException::class)
+    suspend fun show(
+        previewParentJson: JSONObject,
+        widthPercentage: Float = 0f,
+        heightPercentage: Float = 0f,
+        onClickListener: OnClickListener
+    ) = withContext(Dispatchers.Main.immediate) {
+        cancelPendingRequests(includePreview = true)
+        val request = coroutineContext.job
+        pendingPreview = request
+        try {
+            parseInBackground(previewParentJson)
+            pendingPreview = null
+            showPreview(previewParentJson, widthPercentage, heightPercentage, onClickListener)
+        } finally {
+            if (pendingPreview === request) {
+                pendingPreview = null
+            }
+        }
+    }
+
+    /**
+     * Suspending [showDetail]; a newer [showDetails], [showDetail], [show] or [showPreview]
+     * cancels it before it binds, see [show].
+     *
+     * @param detailsParentJson JSON data for detail.
+     * @param onClose Runnable to execute on close.
+     * @param widthPercentage Width as percentage of screen width (0.0 to 1.0).
+     * @param heightPercentage Height as percentage of screen height (0.0 to 1.0).
+     */
+    @Throws(JSONException::class)
+    suspend fun showDetails(
+        detailsParentJson: JSONObject,
+        widthPercentage: Float = 1.0f,
+        heightPercentage: Float = 1.0f,
+        onClose: Runnable?
+    ) = withContext(Dispatchers.Main.immediate) {
+        cancelPendingRequests(includePreview = false)
+        val request = coroutineContext.job
+        pendingDetail = request
+        try {
+            parseInBackground(detailsParentJson, SourceSyncUi.detailsRendering)
+            pendingDetail = null
+            showDetail(detailsParentJson, widthPercentage, heightPercentage, onClose)
+        } finally {
+            if (pendingDetail === request) {
+                pendingDetail = null
+            }
+        }
+    }
+
+    /**
+     * Shows each preview emitted by [previews], dropping any that is still being prepared
+     * when the next one arrives. Collection stops with [cleanup] or when the returned job
+     * is cancelled.
+     *
+     * @param previews Preview envelopes, e.g. mapped from player position updates.
+     * @param onClickListener Listener to execute on click.
+     * @param widthPercentage Width as percentage of screen width (0.0 to 1.0).
+     * @param heightPercentage Height as percentage of screen height (0.0 to 1.0).
+     */
+    fun showLatest(
+        previews: Flow<JSONObject>,
+        widthPercentage: Float = 0f,
+        heightPercentage: Float = 0f,
+        onClickListener: OnClickListener
+    ): Job {
+        return viewScope.launch {
+            previews.collectLatest { previewParentJson ->
+                try {
+                    show(previewParentJson, widthPercentage, heightPercentage, onClickListener)
+                } catch (e: JSONException) {
+                    Log.e(TAG, "Error showing preview: " + e.message)
+                }
+            }
+        }
+    }
+
+    private suspend fun parseInBackground(json: JSONObject, rendering: DetailsRendering? = null) {
+        withContext(Dispatchers.Default) {
+            ActivationDataCache.getOrParse(json, rendering)
+        }
+    }
+
+    // The merged envelope is parsed as a whole, so only its details half is rewritten up front
+    private fun detailsFor(json: JSONObject, rendering: DetailsRendering): JSONObject {
+        return if (rendering == DetailsRendering.LAZY) LazySections.virtualize(json) else json
+    }
+
+    private fun cancelPendingRequests(includePreview: Boolean) {
+        if (includePreview) {
+            pendingPreview?.cancel()
+            pendingPreview = null
+        }
+        pendingDetail?.cancel()
+        pendingDetail = null
+    }
+
+    /**
+     * Enables warm standby for the detail view.
+     *
+     * The details envelope is parsed in the background and, once the preview has settled,
+     * the detail view is built invisibly behind it. A following [showDetail] with the same
+     * envelope then only flips visibility. The standby view is rebuilt after [hideDetails]
+     * and dropped by the next [showPreview].
+     *
+     * @param detailsParentJson JSON data for detail.
+     * @param widthPercentage Width as percentage of screen width (0.0 to 1.0).
+     * @param heightPercentage Height as percentage of screen height (0.0 to 1.0).
+     */
+    fun prepareDetail(
+        detailsParentJson: JSONObject,
+        widthPercentage: Float = 1.0f,
+        heightPercentage: Float = 1.0f
+    ) {
+        standbyRequest = DetailRequest(detailsParentJson, widthPercentage, heightPercentage)
+        scheduleStandby()
+    }
+
+    /**
+     * Sets the details envelope to prepare speculatively.
+     *
+     * A lighter alternative to [prepareDetail]: nothing is built up front. When the preview
+     * is touched or gains D-pad focus, the envelope is parsed in the background and its
+     * images are fetched into the cache, so that the following [showDetail] starts warm.
+     * A cancelled gesture or lost focus stops the image fetches. Reset by [showPreview].
+     *
+     * @param detailsParentJson JSON data for detail, or null to disable.
+     */
+    fun speculateDetail(detailsParentJson: JSONObject?) {
+        cancelSpeculation()
+        speculativeDetail = detailsParentJson
+    }
+
+    private fun startSpeculation() {
+        val json = speculativeDetail ?: return
+        if (speculativeJob?.isActive == true || standbyDetail != null) {
+            return
+        }
+
+        val rendering = SourceSyncUi.detailsRendering
+        speculativeJob = viewScope.launch {
+            try {
+                val imageUrls = withContext(Dispatchers.Default) {
+                    ActivationDataCache.getOrParse(json, rendering)
+                    json.collectImageUrls()
+                }
+                imageLoader.prefetch(imageUrls, speculationTag)
+                Log.d(TAG, "Speculatively prepared detail with ${imageUrls.size} images")
+            } catch (e: JSONException) {
+                Log.e(TAG, "Error preparing detail speculatively: " + e.message)
+            }
+        }
+    }
+
+    private fun cancelSpeculation() {
+        val job = speculativeJob ?: return
+        job.cancel()
+        speculativeJob = null
+        imageLoader.cancelPrefetch(speculationTag)
+    }
+
+    /**
+     * Detaches the current preview and drops everything prepared for it
+     */
+    private fun resetPreview() {
+        // Detach existing preview; its cleanup is deferred until the main thread is idle
+        previewView?.let { existingPreview ->
+            removeView(existingPreview)
+            existingPreview.scheduleCleanup()
+        }
+        previewView = null
+        removePreviewCover()
+        cancelPreviewCapture()
+        previewJson = null
+        tapUptime = 0
+        discardStateView()
+
+        // A new preview invalidates any details prepared for the previous one
+        discardStandby()
+        standbyRequest = null
+        cancelSpeculation()
+        speculativeDetail = null
+    }
+
+    /**
+     * Hides the preview while details are open according to [previewRetention]
+     */
+    private fun hidePreviewForDetails() {
+        // A snapshot cover, and a preview still waiting to bind behind it, go with the preview
+        removePreviewCover()
+        val preview = previewView ?: return
+        when (previewRetention) {
+            PreviewRetention.KEEP_LIVE -> preview.visibility = GONE
+            PreviewRetention.SNAPSHOT -> {
+                capturePreview(preview)
+                releasePreview(preview)
+            }
+            PreviewRetention.DESTROY -> releasePreview(preview)
+        }
+    }
+
+    /**
+     * Shows the preview again after details close, re-creating it if it was released
+     */
+    private fun restorePreview() {
+        previewView?.let { preview ->
+            preview.visibility = VISIBLE
+            return
+        }
+        val json = previewJson ?: return
+
+        // With a cached snapshot, only the cover is added here and the preview binds after it
+        // has been drawn
+        val startUptime = SystemClock.uptimeMillis()
+        try {
+            addPreview(parse(json, store?.previewRequest))
+        } catch (e: JSONException) {
+            Log.e(TAG, "Error re-creating preview view: " + e.message)
+            return
+        }
+        Log.d(TAG, "Preview restored ($previewRetention) in ${SystemClock.uptimeMillis() - startUptime} ms")
+    }
+
+    private fun releasePreview(preview: ActivationPreview) {
+        removeView(preview)
+        preview.scheduleCleanup()
+        previewView = null
+    }
+
+    /**
+     * Caches a rendering of the preview as it is drawn now
+     */
+    private fun capturePreview(preview: ActivationPreview) {
+        if (preview.visibility != VISIBLE) {
+            return
+        }
+        previewSnapshotKey(preview.layoutParams)?.let { SnapshotCache.capture(it, preview) }
+    }
+
+    private fun previewSnapshotKey(params: ViewGroup.LayoutParams?): String? {
+        val json = previewJson ?: return null
+        params ?: return null
+        return SnapshotCache.keyOf(ActivationDataCache.keyOf(json), params.width, params.height)
+    }
+
+    private fun discardStateView() {
+        stateView?.let { states ->
+            removeView(states)
+            states.scheduleCleanup()
+        }
+        stateView = null
+        stateDetailKey = null
+        statePreviewParams = null
+    }
+
+    private fun scheduleStandby() {
+        val request = standbyRequest ?: return
+        discardStandby()
+
+        val rendering = SourceSyncUi.detailsRendering
+        standbyJob = viewScope.launch {
+            try {
+                val detailsData = withContext(Dispatchers.Default) {
+                    ActivationDataCache.getOrParse(request.json, rendering)
+                }
+
+                // Let the preview settle before building views behind it
+                delay(WARM_STANDBY_DELAY_MS)
+                if (detailView != null) {
+                    return@launch
+                }
+
+                // Nothing waits for the standby view, so it is built in a spare frame slot
+                val standby = FrameScheduler.runInFrame(
+                    "standby-details",
+                    FrameScheduler.Priority.IDLE,
+                    onDiscarded = { built: ActivationDetails -> built.safeCleanup() }
+                ) {
+                    ActivationDetails(context, detailsData, createDivConfiguration())
+                }
+                if (detailView != null) {
+                    standby.safeCleanup()
+                    return@launch
+                }
+                standby.visibility = INVISIBLE
+                addView(standby, layoutParamsFor(request.widthPercentage, request.heightPercentage))
+                standbyDetail = standby
+                standbyKey = ActivationDataCache.keyOf(request.json, rendering)
+                Log.d(TAG, "Detail view ready in standby")
+            } catch (e: JSONException) {
+                Log.e(TAG, "Error preparing detail view: " + e.message)
+            }
+        }
+    }
+
+    private fun takeStandby(detailsParentJson: JSONObject): ActivationDetails? {
+        val standby = standbyDetail
+        if (standby == null || standbyKey != ActivationDataCache.keyOf(detailsParentJson, SourceSyncUi.detailsRendering)) {
+            discardStandby()
+            return null
+        }
+
+        standbyDetail = null
+        standbyKey = null
+        return standby
+    }
+
+    private fun discardStandby() {
+        standbyJob?.cancel()
+        standbyJob = null
+        standbyDetail?.let { standby ->
+            removeView(standby)
+            standby.scheduleCleanup()
+        }
+        standbyDetail = null
+        standbyKey = null
+    }
+
+    private fun isOver(view: View, event: MotionEvent): Boolean {
+        val slop = ViewConfiguration.get(context).scaledTouchSlop
+        return event.x >= -slop && event.y >= -slop &&
+            event.x < view.width + slop && event.y < view.height + slop
+    }
+
+    /**
+     * Whether a preview tap is waiting for its details. A tap the host didn't follow up
+     * with details expires, so that losing focus cancels speculation again.
+     */
+    private fun tapPending(): Boolean {
+        if (tapUptime > 0 && SystemClock.uptimeMillis() - tapUptime > TAP_TO_DETAILS_TIMEOUT_MS) {
+            tapUptime = 0
+        }
+        return tapUptime > 0
+    }
+
+    private fun logTapToDetails() {
+        if (!tapPending()) {
+            return
+        }
+        val tapTime = tapUptime
+        tapUptime = 0
+        // A plain post could run before the next frame; posting from a frame callback runs
+        // after that frame's traversal has drawn the details
+        Choreographer.getInstance().postFrameCallback {
+            post { Log.d(TAG, "Tap-to-details: ${SystemClock.uptimeMillis() - tapTime} ms") }
+        }
+    }
+
+    /**
+     * Calculates layout params from percentages of the screen size
+     */
+    private fun layoutParamsFor(widthPercentage: Float, heightPercentage: Float): LayoutParams {
+        val (screenWidth, screenHeight) = windowSize()
+        val width = if (widthPercentage <= 0f) {
+            LayoutParams.WRAP_CONTENT
+        } else {
+            (max(screenWidth, screenHeight) * widthPercentage.coerceIn(0f, 1f)).toInt()
+        }
+
+        val height = if (heightPercentage <= 0f) {
+            LayoutParams.WRAP_CONTENT
+        } else {
+            (min(screenWidth, screenHeight) * heightPercentage.coerceIn(0f, 1f)).toInt()
+        }
+
+        return LayoutParams(width, height)
+    }
+
     /**
      * Convenience method for showPreview with percentage parameters
      */
@@ -189,13 +876,25 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
 
     /**
      * Hides the detail view and restores preview.
+     * The detail view is detached right away and cleaned up once the main thread is idle.
      */
     fun hideDetails() {
+        store?.detailRequest = null
+
+        stateView?.takeIf { it.currentStateId == DETAILS_STATE_ID }?.let { states ->
+            states.switchTo(PREVIEW_STATE_ID)
+            statePreviewParams?.let { states.layoutParams = it }
+            return
+        }
+
         detailView?.let { detail ->
-            detail.safeCleanup()
             removeView(detail)
+            detail.scheduleCleanup()
             detailView = null
-            previewView?.visibility = VISIBLE
+            restorePreview()
+
+            // Keep the next tap warm as well
+            scheduleStandby()
         }
     }
 
@@ -204,38 +903,131 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
      */
     private fun safeCleanupAll() {
         try {
-            // Clean up detail view
+            // Drop single view states and warm standby details
+            discardStateView()
+            discardStandby()
+            standbyRequest = null
+            cancelSpeculation()
+            speculativeDetail = null
+            cancelPendingRequests(includePreview = true)
+            viewScope.coroutineContext.cancelChildren()
+
+            // Detach detail view, cleanup is deferred
             detailView?.let { detail ->
-                detail.safeCleanup()
                 removeView(detail)
+                detail.scheduleCleanup()
             }
             detailView = null
 
-            // Clean up preview view
+            // Detach preview view, cleanup is deferred
             previewView?.let { preview ->
-                preview.safeCleanup()
                 removeView(preview)
+                preview.scheduleCleanup()
             }
             previewView = null
+            removePreviewCover()
+            cancelPreviewCapture()
 
             // Clear handlers
             handler.removeCallbacksAndMessages(null)
             onDetailsCloseClicked = null
             onPreviewClickHandler = null
+
+            // A retained store keeps its loader, our own one is re-created on next show
+            ownImageLoader?.release()
+            ownImageLoader = null
+            divConfiguration = null
         } catch (e: Exception) {
             Log.w(TAG, "Error during cleanup: ${e.message}")
         }
     }
 
+    /**
+     * Current window size in pixels, read from live window metrics
+     */
+    private fun windowSize(): Pair<Int, Int> {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            val windowManager = context.getSystemService(Context.WINDOW_SERVICE) as WindowManager
+            val bounds = windowManager.currentWindowMetrics.bounds
+            return bounds.width() to bounds.height()
+        }
+        val displayMetrics = resources.displayMetrics
+        return displayMetrics.widthPixels to displayMetrics.heightPixels
+    }
+
+    private fun parse(json: JSONObject, request: ActivationStore.Request?, rendering: DetailsRendering? = null): DivData {
+        return store?.dataFor(json, request, rendering) ?: ActivationDataCache.getOrParse(json, rendering)
+    }
+
+    /**
+     * Keeps the shown activation in an [ActivationStore] scoped to [owner], so that it
+     * survives configuration changes. Call it right after creating the view, before
+     * showing anything. When the store already holds an activation, e.g. after the
+     * activity was recreated, the preview and open details are shown again from the
+     * retained parsed data.
+     *
+     * @param owner Activity or fragment the activation belongs to.
+     * @param onClickListener Listener to execute on click of a restored preview.
+     * @param onClose Runnable to execute on close of restored details.
+     * @return true if a retained activation was restored.
+     */
+    @Throws(JSONException::class)
+    fun retainIn(owner: ViewModelStoreOwner, onClickListener: OnClickListener, onClose: Runnable?): Boolean {
+        val retained = ActivationStore.of(owner)
+        if (store !== retained) {
+            store = retained
+            divConfiguration = null
+        }
+
+        val preview = retained.previewRequest ?: return false
+        val detail = retained.detailRequest
+
+        val detailsJson = preview.detailsJson
+        if (detailsJson != null) {
+            showPreviewWithDetail(preview.json, detailsJson, preview.widthPercentage, preview.heightPercentage, onClickListener)
+        } else {
+            showPreview(preview.json, preview.widthPercentage, preview.heightPercentage, onClickListener)
+        }
+
+        detail?.let {
+            // Same as a preview click: the preview is hidden while details are open
+            hidePreviewForDetails()
+            showDetail(it.json, it.widthPercentage, it.heightPercentage, onClose)
+        }
+        Log.d(TAG, "Restored retained activation, details open: ${detail != null}")
+        return true
+    }
+
     /**
      * Get screen width in pixels
      */
-    fun getScreenWidth(): Int = screenWidth
+    fun getScreenWidth(): Int = windowSize().first
 
     /**
      * Get screen height in pixels
      */
-    fun getScreenHeight(): Int = screenHeight
+    fun getScreenHeight(): Int = windowSize().second
+
+    override fun onConfigurationChanged(newConfig: Configuration) {
+        super.onConfigurationChanged(newConfig)
+
+        // The window may be resized without recreating the activity, e.g. in multi-window
+        previewView?.layoutParams = layoutParamsFor(previewPercentages.first, previewPercentages.second)
+        detailView?.layoutParams = layoutParamsFor(detailPercentages.first, detailPercentages.second)
+        // The standby is laid out while INVISIBLE, so it has to be at the new size before it is shown
+        standbyRequest?.let { request ->
+            standbyDetail?.layoutParams = layoutParamsFor(request.widthPercentage, request.heightPercentage)
+        }
+        stateView?.let { states ->
+            val previewParams = layoutParamsFor(previewPercentages.first, previewPercentages.second)
+            statePreviewParams = previewParams
+            states.layoutParams = if (states.currentStateId == DETAILS_STATE_ID) {
+                layoutParamsFor(detailPercentages.first, detailPercentages.second)
+            } else {
+                previewParams
+            }
+        }
+    }
 
     override fun onDetachedFromWindow() {
         // Clean up resources safely
@@ -253,5 +1045,9 @@ class ActivationView(private val context: Context) : FrameLayout(context) {
 
     companion object {
         private const val TAG = "SDK:ActivationView"
+        private const val WARM_STANDBY_DELAY_MS = 300L
+        private const val TAP_TO_DETAILS_TIMEOUT_MS = 1_000L
+        private const val PREVIEW_COVER_TIMEOUT_MS = 1_000L
+        private const val PREVIEW_CAPTURE_TIMEOUT_MS = 5_000L
     }
 }
\ No newline at end of file
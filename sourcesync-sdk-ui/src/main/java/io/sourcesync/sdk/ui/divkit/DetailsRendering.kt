@@ -0,0 +1,20 @@
+package io.sourcesync.sdk.ui.divkit
+
+/**
+ * How [ActivationView] binds the details envelope.
+ */
+enum class DetailsRendering {
+    /**
+     * Bind the envelope as given. Every item of a section inside a gallery is measured and
+     * bound before the first frame.
+     */
+    FULL,
+
+    /**
+     * Splice plain sections into the vertical gallery around them, see
+     * [io.sourcesync.sdk.core.LazySections]. Only items in and near the viewport are bound,
+     * and the rest as the user scrolls, so initial bind time and view count no longer grow
+     * with the length of the list. Renders the same as [FULL].
+     */
+    LAZY
+}
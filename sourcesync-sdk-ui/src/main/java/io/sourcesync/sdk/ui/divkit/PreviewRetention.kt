@@ -0,0 +1,25 @@
+package io.sourcesync.sdk.ui.divkit
+
+/**
+ * What [ActivationView] does with the preview while details are open.
+ */
+enum class PreviewRetention {
+    /**
+     * Keep the preview's Div2View, images and bindings alive with visibility GONE.
+     * Costs the full preview memory while details are open; restoring is a visibility flip.
+     */
+    KEEP_LIVE,
+
+    /**
+     * Draw the preview into a bitmap and release the view. Costs width x height x 4 bytes
+     * while details are open; on restore the bitmap shows at once while a new preview is
+     * bound behind it.
+     */
+    SNAPSHOT,
+
+    /**
+     * Release the preview completely and bind a new one on restore. Costs no memory
+     * while details are open; restoring pays bind and image load latency.
+     */
+    DESTROY
+}
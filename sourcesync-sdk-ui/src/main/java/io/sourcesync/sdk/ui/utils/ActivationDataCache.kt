@@ -0,0 +1,76 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.util.Log
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.core.ContentCache
+import io.sourcesync.sdk.core.LazySections
+import io.sourcesync.sdk.ui.divkit.DetailsRendering
+import io.sourcesync.sdk.ui.utils.LayoutUtils.asTemplateAndCardParsed
+import org.json.JSONObject
+
+/**
+ * Process-wide cache of parsed activation envelopes.
+ *
+ * Entries are keyed by a hash of the envelope content, so two equal envelopes
+ * share one [DivData]. The hash of a given [JSONObject] instance is memoized,
+ * which means an envelope must not be mutated once it has been handed to the cache.
+ * Details envelopes parsed for [DetailsRendering.LAZY] are kept under their own key.
+ */
+object ActivationDataCache : ResourceManager.Trimmable {
+    private const val TAG = "ActivationDataCache"
+    private const val DEFAULT_MAX_ENTRIES = 32
+
+    private val entries = ContentCache<DivData>(DEFAULT_MAX_ENTRIES)
+
+    /**
+     * Returns the content key for the envelope, computing it on first use
+     */
+    fun keyOf(envelope: JSONObject): String = entries.keyOf(envelope)
+
+    /**
+     * Returns the key of the data parsed for the envelope with [rendering]; [DetailsRendering.FULL]
+     * binds the envelope as given and shares its key
+     */
+    fun keyOf(envelope: JSONObject, rendering: DetailsRendering?): String {
+        val key = keyOf(envelope)
+        return if (rendering == DetailsRendering.LAZY) "$key/lazy" else key
+    }
+
+    /**
+     * Returns the parsed data for the envelope if it is already cached
+     */
+    fun get(envelope: JSONObject, rendering: DetailsRendering? = null): DivData? = entries[keyOf(envelope, rendering)]
+
+    /**
+     * Returns the parsed data for the envelope, parsing it on the calling thread on a miss
+     *
+     * @param rendering How to bind a details envelope, or null for other envelopes.
+     */
+    fun getOrParse(envelope: JSONObject, rendering: DetailsRendering? = null): DivData {
+        val key = keyOf(envelope, rendering)
+        entries[key]?.let { return it }
+
+        val source = if (rendering == DetailsRendering.LAZY) LazySections.virtualize(envelope) else envelope
+        return source.asTemplateAndCardParsed().also {
+            entries.put(key, it)
+            Log.d(TAG, "Parsed envelope $key (${entries.size} cached)")
+        }
+    }
+
+    fun clear() {
+        entries.clear()
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        val before = entries.size
+        when (pressure) {
+            ResourceManager.Pressure.LOW -> entries.trimToSize(before * 3 / 4)
+            ResourceManager.Pressure.MEDIUM -> entries.trimToSize(before / 2)
+            ResourceManager.Pressure.HIGH -> entries.clear()
+        }
+        val released = before - entries.size
+        return if (released > 0) "$released parsed envelopes" else null
+    }
+}
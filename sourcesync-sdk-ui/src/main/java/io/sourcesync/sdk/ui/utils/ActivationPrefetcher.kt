@@ -0,0 +1,260 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.annotation.MainThread
+import io.sourcesync.sdk.core.ActivationSchedule
+import io.sourcesync.sdk.ui.utils.LayoutUtils.collectImageUrls
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.MainScope
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.asResponseBody
+import okio.Throttler
+import okio.blackholeSink
+import okio.buffer
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+
+/**
+ * Fetches the envelopes and images of upcoming activations ahead of playback.
+ *
+ * The host reports the playback position through [onPosition]. Every activation of the
+ * schedule that is on screen or starts within [lookAheadMs] is fetched, nearest first, into
+ * the HTTP caches that [EnvelopeRepository] and [PicassoDivImageLoader] read from, and its
+ * envelope is parsed into [ActivationDataCache].
+ *
+ * Downloads share one [bytesPerSecond] budget and at most `maxConcurrent` activations are
+ * fetched at a time, so prefetching leaves the bandwidth to the video stream. A seek restarts
+ * the queue from the new position; fetches for activations that fell out of the window are
+ * cancelled. A failed fetch is retried after [RETRY_DELAY_MS] while its activation stays in
+ * the window.
+ *
+ * @param schedule Envelope URLs on the playback timeline, see [scheduleOf].
+ * @param lookAheadMs How far ahead of the position to fetch.
+ * @param bytesPerSecond Download budget shared by all fetches, or 0 for none.
+ * @param maxConcurrent Activations fetched at the same time.
+ */
+class ActivationPrefetcher @JvmOverloads constructor(
+    context: Context,
+    private val schedule: ActivationSchedule<String>,
+    private val lookAheadMs: Long = DEFAULT_LOOK_AHEAD_MS,
+    bytesPerSecond: Long = DEFAULT_BYTES_PER_SECOND,
+    maxConcurrent: Int = DEFAULT_MAX_CONCURRENT
+) {
+    private val appContext = context.applicationContext
+    private val scope = MainScope()
+    private val throttler = Throttler().apply { bytesPerSecond(bytesPerSecond) }
+    private val interceptor = ThrottlingInterceptor(throttler)
+    private val permits = Semaphore(maxConcurrent)
+    private val envelopes = EnvelopeRepository(
+        appContext,
+        EnvelopeRepository.DEFAULT_STALE_WHILE_REVALIDATE_SECONDS,
+        interceptor
+    )
+
+    // Same pool, dispatcher and disk cache as the image loaders, see SharedHttp
+    private val imageClient: OkHttpClient by lazy {
+        SharedHttp.client(appContext, OkHttpClient.Builder().addNetworkInterceptor(interceptor))
+    }
+
+    private class Task {
+        lateinit var job: Job
+        var started = false
+    }
+
+    private val tasks = LinkedHashMap<String, Task>()
+    private val done = HashSet<String>()
+    private val failedAt = HashMap<String, Long>()
+    private var lastPositionMs = -1L
+    private var lastUpdateMs = 0L
+
+    /**
+     * Download budget shared by all fetches, or 0 for none. Applies to running fetches too.
+     */
+    var bytesPerSecond: Long = bytesPerSecond
+        set(value) {
+            field = value
+            throttler.bytesPerSecond(value)
+        }
+
+    /**
+     * Activations queued or being fetched
+     */
+    val pendingCount: Int
+        get() = tasks.size
+
+    /**
+     * Updates the playback position; cheap enough to call on every progress update
+     */
+    @MainThread
+    fun onPosition(positionMs: Long) {
+        val now = SystemClock.elapsedRealtime()
+        val seeked = lastPositionMs >= 0 &&
+            (positionMs < lastPositionMs || positionMs > lastPositionMs + (now - lastUpdateMs) + SEEK_TOLERANCE_MS)
+        lastPositionMs = positionMs
+        lastUpdateMs = now
+
+        val window = LinkedHashSet<String>()
+        window.addAll(schedule.activeAt(positionMs))
+        window.addAll(schedule.upcoming(positionMs, lookAheadMs))
+
+        // After a seek, queued work is requeued below in the order of the new position
+        val dropped = tasks.entries.iterator()
+        while (dropped.hasNext()) {
+            val (url, task) = dropped.next()
+            if (url !in window || (seeked && !task.started)) {
+                task.job.cancel()
+                dropped.remove()
+            }
+        }
+        if (seeked) {
+            Log.d(TAG, "Seek to ${positionMs}ms, ${tasks.size} fetches kept")
+        }
+
+        // Activations that come back into the window after leaving it are fetched again
+        done.retainAll(window)
+        failedAt.keys.retainAll(window)
+
+        for (url in window) {
+            if (url !in done && url !in tasks && !isBackingOff(url, now)) {
+                tasks[url] = launch(url)
+            }
+        }
+    }
+
+    /**
+     * Cancels all fetches. The prefetcher must not be used afterwards.
+     */
+    fun release() {
+        scope.cancel()
+        tasks.clear()
+    }
+
+    private fun isBackingOff(url: String, now: Long): Boolean {
+        val failed = failedAt[url] ?: return false
+        return now - failed < RETRY_DELAY_MS
+    }
+
+    private fun launch(url: String): Task {
+        val task = Task()
+        task.job = scope.launch {
+            val fetched = permits.withPermit {
+                task.started = true
+                prefetch(url)
+            }
+            if (fetched) {
+                done.add(url)
+                failedAt.remove(url)
+            } else {
+                failedAt[url] = SystemClock.elapsedRealtime()
+            }
+            if (tasks[url] === task) {
+                tasks.remove(url)
+            }
+        }
+        return task
+    }
+
+    /**
+     * Returns whether the envelope and all of its images are in the caches
+     */
+    private suspend fun prefetch(url: String): Boolean {
+        val imageUrls = try {
+            val envelope = envelopes.envelope(url)
+            withContext(Dispatchers.Default) {
+                ActivationDataCache.getOrParse(envelope)
+                envelope.collectImageUrls()
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.w(TAG, "Prefetching $url failed: ${e.message}")
+            return false
+        }
+
+        var complete = true
+        for (imageUrl in imageUrls) {
+            try {
+                fetchImage(imageUrl)
+            } catch (e: IOException) {
+                Log.w(TAG, "Prefetching image $imageUrl failed: ${e.message}")
+                complete = false
+            }
+        }
+        Log.d(TAG, "Prefetched $url with ${imageUrls.size} images")
+        return complete
+    }
+
+    // Interruptible so that cancelling stops a fetch waiting on the throttler
+    private suspend fun fetchImage(url: String) = runInterruptible(Dispatchers.IO) {
+        imageClient.newCall(Request.Builder().url(url).build()).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("HTTP ${response.code}")
+            }
+            // Reading the body to the end is what stores it in the disk cache
+            response.body?.source()?.readAll(blackholeSink())
+        }
+    }
+
+    /**
+     * Throttles response bodies as they come off the network, beneath the cache
+     */
+    private class ThrottlingInterceptor(private val throttler: Throttler) : Interceptor {
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val response = chain.proceed(chain.request())
+            val body = response.body ?: return response
+            val throttled = throttler.source(body.source()).buffer()
+            return response.newBuilder()
+                .body(throttled.asResponseBody(body.contentType(), body.contentLength()))
+                .build()
+        }
+    }
+
+    companion object {
+        private const val TAG = "ActivationPrefetcher"
+        private const val SEEK_TOLERANCE_MS = 2_000L
+
+        /** How long a failed activation waits before it is fetched again */
+        const val RETRY_DELAY_MS = 30_000L
+
+        const val DEFAULT_LOOK_AHEAD_MS = 5 * 60 * 1000L
+        const val DEFAULT_BYTES_PER_SECOND = 128 * 1024L
+        const val DEFAULT_MAX_CONCURRENT = 2
+
+        /**
+         * Reads a manifest of the form
+         * `{"activations": [{"url": "...", "start_ms": 0, "end_ms": 30000}, ...]}`
+         *
+         * @throws JSONException When an entry lacks one of the fields.
+         */
+        @JvmStatic
+        fun scheduleOf(manifest: JSONObject): ActivationSchedule<String> {
+            val activations = manifest.getJSONArray("activations")
+            val cues = ArrayList<ActivationSchedule.Cue<String>>(activations.length())
+            for (i in 0 until activations.length()) {
+                val activation = activations.getJSONObject(i)
+                cues.add(
+                    ActivationSchedule.Cue(
+                        activation.getLong("start_ms"),
+                        activation.getLong("end_ms"),
+                        activation.getString("url")
+                    )
+                )
+            }
+            return ActivationSchedule(cues)
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.Context
+import android.content.res.AssetFileDescriptor
+import androidx.annotation.WorkerThread
+import io.sourcesync.sdk.core.Payloads
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.ByteArrayInputStream
+import java.io.EOFException
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+/**
+ * Reads envelopes from the app's assets.
+ *
+ * Uncompressed assets are opened with [android.content.res.AssetManager.openFd] and read in
+ * one go through a file channel into a pooled buffer, which is decoded straight into the
+ * String that org.json parses. Assets that the build stored compressed can't be opened as a
+ * file descriptor and are streamed instead, as are gzip and Brotli envelopes, see [Payloads].
+ */
+object AssetEnvelopes : ResourceManager.Trimmable {
+    private const val TAG = "AssetEnvelopes"
+
+    // Larger buffers are not kept between reads
+    private const val MAX_POOLED_BYTES = 1_048_576
+
+    private var pooled: ByteArray? = null
+
+    init {
+        ResourceManager.register(this)
+    }
+
+    /**
+     * Reads the asset at [path] on a background thread, see [read]
+     */
+    suspend fun load(context: Context, path: String): JSONObject = withContext(Dispatchers.IO) {
+        read(context, path)
+    }
+
+    /**
+     * Reads the asset at [path], e.g. `details.json` or `details.json.gz`
+     *
+     * @throws IOException When the asset is missing or can't be read.
+     * @throws JSONException When the asset is not a JSON object.
+     */
+    @WorkerThread
+    @JvmStatic
+    @Throws(IOException::class, JSONException::class)
+    fun read(context: Context, path: String): JSONObject {
+        val assets = context.assets
+        return read(path, assets::openFd, assets::open)
+    }
+
+    // AssetManager can't be stubbed, so tests pass their own openers
+    internal fun read(
+        path: String,
+        openFd: (String) -> AssetFileDescriptor,
+        open: (String) -> InputStream
+    ): JSONObject {
+        val encoding = Payloads.encodingOf(path)
+        val descriptor = try {
+            openFd(path)
+        } catch (e: FileNotFoundException) {
+            // Stored compressed in the APK, or missing; open() tells the two apart
+            return Payloads.readJson(open(path), encoding)
+        }
+
+        descriptor.use {
+            val length = descriptor.length
+            if ((encoding != null && encoding != Payloads.Encoding.IDENTITY) || length !in 0..Int.MAX_VALUE) {
+                return Payloads.readJson(descriptor.createInputStream(), encoding)
+            }
+            return readJson(descriptor, length.toInt(), path)
+        }
+    }
+
+    private fun readJson(descriptor: AssetFileDescriptor, length: Int, path: String): JSONObject {
+        val buffer = takeBuffer(length)
+        try {
+            descriptor.createInputStream().use { stream ->
+                // Positional reads, so the shared file offset of the descriptor doesn't matter
+                val channel = stream.channel
+                val target = ByteBuffer.wrap(buffer, 0, length)
+                var position = descriptor.startOffset
+                while (target.hasRemaining()) {
+                    val read = channel.read(target, position)
+                    if (read < 0) {
+                        throw EOFException("Asset $path ended after ${position - descriptor.startOffset} bytes")
+                    }
+                    position += read
+                }
+            }
+            if (length >= 2 && buffer[0] == 0x1f.toByte() && buffer[1] == 0x8b.toByte()) {
+                // gzip under a plain name
+                return Payloads.readJson(ByteArrayInputStream(buffer, 0, length), Payloads.Encoding.GZIP)
+            }
+            return JSONObject(String(buffer, 0, length, Charsets.UTF_8))
+        } finally {
+            giveBack(buffer)
+        }
+    }
+
+    private fun takeBuffer(size: Int): ByteArray {
+        val buffer = synchronized(this) {
+            pooled?.takeIf { it.size >= size }?.also { pooled = null }
+        }
+        return buffer ?: ByteArray(size)
+    }
+
+    private fun giveBack(buffer: ByteArray) {
+        if (buffer.size > MAX_POOLED_BYTES) {
+            return
+        }
+        synchronized(this) {
+            if ((pooled?.size ?: -1) < buffer.size) {
+                pooled = buffer
+            }
+        }
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        if (pressure == ResourceManager.Pressure.LOW) {
+            return null
+        }
+        val released = synchronized(this) {
+            pooled.also { pooled = null }
+        }
+        return released?.let { "${it.size / 1024} KB read buffer" }
+    }
+}
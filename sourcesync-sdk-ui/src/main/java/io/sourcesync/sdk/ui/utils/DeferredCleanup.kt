@@ -0,0 +1,169 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.os.Looper
+import android.os.MessageQueue
+import android.util.Log
+import android.view.View
+import android.view.ViewGroup
+import androidx.recyclerview.widget.RecyclerView
+import com.yandex.div.core.view2.Div2View
+import java.util.Collections
+import java.util.WeakHashMap
+
+/**
+ * Runs [LayoutUtils.safeCleanup] work for detached div views while the main thread is idle.
+ *
+ * Views are removed from the hierarchy immediately by their owners and handed over here.
+ * The hierarchy walk that clears RecyclerViews is done incrementally, a few views at a time,
+ * and each idle pass stops once [FRAME_BUDGET_NANOS] is spent so that a large details view
+ * never costs more than a slice of a frame. The final [LayoutUtils.releaseDivView] counts
+ * against the budget too: it only starts when its measured cost still fits, or at the start
+ * of a pass. Must be used from the main thread only.
+ */
+object DeferredCleanup : MessageQueue.IdleHandler, ResourceManager.Trimmable {
+    private const val TAG = "DeferredCleanup"
+    private const val FRAME_BUDGET_NANOS = 4_000_000L
+
+    private class Cleared(
+        val recyclerView: RecyclerView,
+        val adapter: RecyclerView.Adapter<*>?,
+        val layoutManager: RecyclerView.LayoutManager?
+    )
+
+    private class Entry(val tag: String, val divView: Div2View) {
+        val pending = ArrayDeque<View>().apply { addLast(divView) }
+
+        // Galleries cleared so far, put back if the view is attached again
+        val cleared = ArrayList<Cleared>()
+
+        fun restore() {
+            for (gallery in cleared) {
+                gallery.recyclerView.layoutManager = gallery.layoutManager
+                gallery.recyclerView.adapter = gallery.adapter
+            }
+            cleared.clear()
+        }
+    }
+
+    private val entries = ArrayDeque<Entry>()
+    private var registered = false
+
+    // Views released while detached; they need new data before they are shown again
+    private val released = Collections.newSetFromMap(WeakHashMap<Div2View, Boolean>())
+
+    // Running average of what releasing one div view costs
+    private var releaseNanos = 0L
+
+    /**
+     * Number of div views still waiting for cleanup
+     */
+    val pendingCount: Int
+        get() = entries.size
+
+    /**
+     * Queue a detached div view for cleanup on the next idle passes
+     */
+    fun schedule(tag: String, divView: Div2View?) {
+        divView ?: return
+        if (entries.any { it.divView === divView }) {
+            return
+        }
+
+        released.remove(divView)
+        entries.addLast(Entry(tag, divView))
+        if (!registered) {
+            Looper.getMainLooper().queue.addIdleHandler(this)
+            registered = true
+        }
+    }
+
+    /**
+     * Drop a queued cleanup because the view was attached again. Galleries that were
+     * already cleared get their adapter and layout manager back.
+     *
+     * @return false if the view was already released and has to be bound again.
+     */
+    fun cancel(divView: Div2View?): Boolean {
+        divView ?: return true
+        if (released.remove(divView)) {
+            return false
+        }
+        val entry = entries.firstOrNull { it.divView === divView } ?: return true
+        entries.remove(entry)
+        entry.restore()
+        return true
+    }
+
+    /**
+     * Drop a queued cleanup because the view is about to be cleaned up right away
+     */
+    fun discard(divView: Div2View?) {
+        divView ?: return
+        released.remove(divView)
+        entries.removeAll { it.divView === divView }
+    }
+
+    /**
+     * Run all queued cleanup now, ignoring the frame budget
+     */
+    fun flush() {
+        runUntil(Long.MAX_VALUE)
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        val pending = pendingCount
+        flush()
+        return if (pending > 0) "$pending pending div views" else null
+    }
+
+    override fun queueIdle(): Boolean {
+        runUntil(System.nanoTime() + FRAME_BUDGET_NANOS)
+        registered = entries.isNotEmpty()
+        return registered
+    }
+
+    private fun runUntil(deadline: Long) {
+        var worked = false
+        while (entries.isNotEmpty()) {
+            val now = System.nanoTime()
+            if (now >= deadline) {
+                return
+            }
+            val entry = entries.first()
+            val view = entry.pending.removeFirstOrNull()
+
+            if (view == null) {
+                // Left for the next pass unless it fits, but never starved
+                if (worked && deadline - now < releaseNanos) {
+                    return
+                }
+                entries.removeFirst()
+                try {
+                    LayoutUtils.releaseDivView(entry.tag, entry.divView)
+                    released.add(entry.divView)
+                } catch (e: Exception) {
+                    Log.w(TAG, "Error during deferred cleanup: ${e.message}")
+                }
+                val cost = System.nanoTime() - now
+                releaseNanos = if (releaseNanos == 0L) cost else (releaseNanos * 3 + cost) / 4
+                worked = true
+                continue
+            }
+            worked = true
+
+            // Items leave a gallery when it is cleared, so queue them first; galleries inside
+            // them are cleared while they wait in the pool
+            if (view is ViewGroup) {
+                for (i in 0 until view.childCount) {
+                    entry.pending.addLast(view.getChildAt(i))
+                }
+            }
+            if (view is RecyclerView) {
+                entry.cleared.add(Cleared(view, view.adapter, view.layoutManager))
+                LayoutUtils.clearRecyclerView(entry.tag, view)
+            }
+        }
+    }
+}
@@ -1,15 +1,19 @@
 package io.sourcesync.sdk.ui.utils
 
+import android.content.ActivityNotFoundException
 import android.content.Context
 import android.content.Intent
 import android.net.Uri
 import android.util.Log
+import androidx.annotation.VisibleForTesting
 import androidx.core.content.ContextCompat
 import com.yandex.div.core.DivActionHandler
 import com.yandex.div.core.DivViewFacade
 import com.yandex.div.json.expressions.ExpressionResolver
 import com.yandex.div2.DivAction
 import androidx.core.net.toUri
+import io.sourcesync.sdk.core.UrlRoute
+import io.sourcesync.sdk.core.UrlRouter
 
 /**
  * EnhancedDivUrlHandler
@@ -41,7 +45,8 @@ class EnhancedDivUrlHandler(
         return handleUrl(urlString.toString())
     }
 
-    private fun handleUrl(urlString: String): Boolean {
+    @VisibleForTesting
+    internal fun handleUrl(urlString: String): Boolean {
         val uri = try {
             urlString.toUri()
         } catch (e: Exception) {
@@ -49,31 +54,32 @@ class EnhancedDivUrlHandler(
             return false
         }
         val normalizedUrlString = urlString.lowercase()
+        val route = UrlRouter.route(normalizedUrlString)
 
-        Log.d(TAG, "Handling URL: $normalizedUrlString")
+        Log.d(TAG, "Handling URL: $normalizedUrlString ($route)")
 
-        return when {
+        return when (route) {
             // Handle close action
-            normalizedUrlString.startsWith("div-action://close") -> {
+            UrlRoute.CLOSE -> {
                 handleCloseAction()
                 true
             }
 
             // Handle external URLs (http/https)
-            normalizedUrlString.startsWith("http://") || normalizedUrlString.startsWith("https://") -> {
+            UrlRoute.EXTERNAL -> {
                 handleExternalUrl(uri)
                 true
             }
 
-            // Handle custom schemes
-            uri.scheme != null && !normalizedUrlString.startsWith("http") -> {
-                handleCustomScheme(uri)
-                true
+            UrlRoute.UNHANDLED -> {
+                Log.w(TAG, "⚠️ Unhandled URL: $normalizedUrlString")
+                false
             }
 
+            // Handle custom schemes
             else -> {
-                Log.w(TAG, "⚠️ Unhandled URL: $normalizedUrlString")
-                false
+                handleCustomScheme(uri, route)
+                true
             }
         }
     }
@@ -104,17 +110,17 @@ class EnhancedDivUrlHandler(
         }
     }
 
-    private fun handleCustomScheme(uri: Uri) {
+    private fun handleCustomScheme(uri: Uri, route: UrlRoute) {
         Log.d(TAG, "Handling custom scheme: $uri")
 
-        val scheme = uri.scheme?.lowercase() ?: return
-
         try {
-            when (scheme) {
-                "mailto" -> handleMailtoUrl(uri)
-                "tel" -> handleTelephoneUrl(uri)
-                "sms" -> handleSmsUrl(uri)
-                "div-action" -> handleDivAction(uri)
+            when (route) {
+                UrlRoute.MAILTO -> handleMailtoUrl(uri)
+                UrlRoute.TEL -> handleTelephoneUrl(uri)
+                UrlRoute.SMS -> handleSmsUrl(uri)
+                UrlRoute.REFRESH -> handleRefreshAction()
+                UrlRoute.BACK -> handleBackAction()
+                UrlRoute.UNKNOWN_DIV_ACTION -> Log.w(TAG, "Unknown div-action: $uri")
                 else -> {
                     // Use custom handler or fallback
                     if (onCustomSchemeAction != null) {
@@ -134,12 +140,7 @@ class EnhancedDivUrlHandler(
             data = uri
             addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
         }
-
-        if (intent.resolveActivity(context.packageManager) != null) {
-            ContextCompat.startActivity(context, intent, null)
-        } else {
-            Log.e(TAG, "No email app available")
-        }
+        startActivity(intent, "No email app available")
     }
 
     private fun handleTelephoneUrl(uri: Uri) {
@@ -147,12 +148,7 @@ class EnhancedDivUrlHandler(
             data = uri
             addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
         }
-
-        if (intent.resolveActivity(context.packageManager) != null) {
-            ContextCompat.startActivity(context, intent, null)
-        } else {
-            Log.e(TAG, "No phone app available")
-        }
+        startActivity(intent, "No phone app available")
     }
 
     private fun handleSmsUrl(uri: Uri) {
@@ -160,24 +156,7 @@ class EnhancedDivUrlHandler(
             data = uri
             addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
         }
-
-        if (intent.resolveActivity(context.packageManager) != null) {
-            ContextCompat.startActivity(context, intent, null)
-        } else {
-            Log.e(TAG, "No SMS app available")
-        }
-    }
-
-    private fun handleDivAction(uri: Uri) {
-        val path = uri.path?.lowercase() ?: ""
-        val host = uri.host?.lowercase() ?: ""
-
-        when ("$host$path") {
-            "close", "/close" -> handleCloseAction()
-            "refresh", "/refresh" -> handleRefreshAction()
-            "back", "/back" -> handleBackAction()
-            else -> Log.w(TAG, "Unknown div-action: $uri")
-        }
+        startActivity(intent, "No SMS app available")
     }
 
     private fun handleRefreshAction() {
@@ -195,11 +174,16 @@ class EnhancedDivUrlHandler(
             data = uri
             addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
         }
+        startActivity(intent, "No app available to handle: $uri")
+    }
 
-        if (intent.resolveActivity(context.packageManager) != null) {
+    // Starting directly instead of calling resolveActivity first saves a
+    // package manager round trip on the main thread for every tap
+    private fun startActivity(intent: Intent, missingMessage: String) {
+        try {
             ContextCompat.startActivity(context, intent, null)
-        } else {
-            Log.e(TAG, "No app available to handle: $uri")
+        } catch (e: ActivityNotFoundException) {
+            Log.e(TAG, missingMessage)
         }
     }
 
@@ -0,0 +1,227 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.Context
+import android.util.Log
+import android.util.LruCache
+import com.yandex.div2.DivData
+import io.sourcesync.sdk.core.Payloads
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import okhttp3.CacheControl
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Loads activation envelopes from the network with HTTP caching.
+ *
+ * Envelopes are stored in their own OkHttp disk cache, see [SharedHttp.envelopeClient].
+ * OkHttp honours `Cache-Control` and revalidates with `If-None-Match` / `If-Modified-Since`,
+ * so an unchanged envelope costs a 304 and no download. Parsed [DivData] is kept in
+ * [ActivationDataCache], and an envelope that is unchanged after revalidation is the same
+ * [JSONObject] instance as before, so it is not parsed again. Envelopes are requested as gzip,
+ * or Brotli when the app has a decoder, and decompressed while parsing, see [Payloads].
+ *
+ * Stale-while-revalidate: a cached envelope past its max-age is returned at once while it is
+ * revalidated in the background, for as long as its `stale-while-revalidate` directive allows,
+ * or [staleWhileRevalidateSeconds] when it has none. Later it is fetched before returning,
+ * and the stale copy is used only when the network fails. [onUpdated] is told about envelopes
+ * that changed during a background revalidation.
+ *
+ * @param staleWhileRevalidateSeconds How long past max-age a cached envelope may be served
+ * while it is revalidated, unless the response says otherwise.
+ */
+class EnvelopeRepository internal constructor(
+    context: Context,
+    private val staleWhileRevalidateSeconds: Long,
+    private val networkInterceptor: Interceptor?
+) {
+    @JvmOverloads
+    constructor(
+        context: Context,
+        staleWhileRevalidateSeconds: Long = DEFAULT_STALE_WHILE_REVALIDATE_SECONDS
+    ) : this(context, staleWhileRevalidateSeconds, null)
+
+    private val appContext = context.applicationContext
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val client: OkHttpClient by lazy {
+        val shared = SharedHttp.envelopeClient(appContext)
+        networkInterceptor?.let { shared.newBuilder().addNetworkInterceptor(it).build() } ?: shared
+    }
+
+    private class Entry(val validator: String, val envelope: JSONObject)
+
+    // Last envelope per URL, keyed by its ETag or Last-Modified
+    private val entries = LruCache<String, Entry>(MAX_MEMORY_ENTRIES)
+    private val revalidating = HashSet<String>()
+
+    /**
+     * Called on a background thread when a background revalidation found a new envelope
+     */
+    @Volatile
+    var onUpdated: ((url: String, envelope: JSONObject) -> Unit)? = null
+
+    /**
+     * Returns the envelope at [url], from the cache when allowed
+     *
+     * @throws IOException When it is neither cached nor available from the network.
+     * @throws JSONException When the response is not a JSON object.
+     */
+    suspend fun envelope(url: String): JSONObject = withContext(Dispatchers.IO) {
+        val cached = cachedResponse(url)
+        if (cached == null) {
+            return@withContext fetch(url, maxAgeSeconds = null)
+        }
+
+        cached.use { response ->
+            val staleMillis = staleMillis(response)
+            if (staleMillis <= 0) {
+                return@withContext read(url, response)
+            }
+            if (staleMillis <= TimeUnit.SECONDS.toMillis(staleWindowSeconds(response))) {
+                Log.d(TAG, "Serving $url ${staleMillis / 1000}s stale while revalidating")
+                val envelope = read(url, response)
+                revalidate(url)
+                return@withContext envelope
+            }
+
+            try {
+                fetch(url, maxAgeSeconds = null)
+            } catch (e: IOException) {
+                Log.w(TAG, "Revalidating $url failed, serving stale copy: ${e.message}")
+                read(url, response)
+            }
+        }
+    }
+
+    /**
+     * Returns the parsed envelope at [url], see [envelope]
+     */
+    suspend fun load(url: String): DivData {
+        val envelope = envelope(url)
+        return withContext(Dispatchers.Default) {
+            ActivationDataCache.getOrParse(envelope)
+        }
+    }
+
+    /**
+     * Fetches [url] into the caches ahead of time; failures are only logged
+     */
+    fun prefetch(url: String) {
+        scope.launch {
+            try {
+                load(url)
+            } catch (e: Exception) {
+                Log.w(TAG, "Prefetching $url failed: ${e.message}")
+            }
+        }
+    }
+
+    private fun revalidate(url: String) {
+        synchronized(revalidating) {
+            if (!revalidating.add(url)) {
+                return
+            }
+        }
+        scope.launch {
+            try {
+                val previous = entries.get(url)?.envelope
+                // max-age=0 makes OkHttp send a conditional request for the cached copy
+                val envelope = fetch(url, maxAgeSeconds = 0)
+                if (envelope !== previous) {
+                    Log.d(TAG, "Envelope $url changed")
+                    onUpdated?.invoke(url, envelope)
+                }
+            } catch (e: Exception) {
+                Log.w(TAG, "Background revalidation of $url failed: ${e.message}")
+            } finally {
+                synchronized(revalidating) { revalidating.remove(url) }
+            }
+        }
+    }
+
+    private fun cachedResponse(url: String): Response? {
+        val cacheControl = CacheControl.Builder()
+            .onlyIfCached()
+            .maxStale(Int.MAX_VALUE, TimeUnit.SECONDS)
+            .build()
+        val response = client.newCall(request(url).cacheControl(cacheControl).build()).execute()
+        if (response.code == HTTP_GATEWAY_TIMEOUT) {
+            // OkHttp's answer to only-if-cached when nothing usable is cached
+            response.close()
+            return null
+        }
+        return response
+    }
+
+    private fun fetch(url: String, maxAgeSeconds: Int?): JSONObject {
+        val request = request(url)
+        if (maxAgeSeconds != null) {
+            request.cacheControl(CacheControl.Builder().maxAge(maxAgeSeconds, TimeUnit.SECONDS).build())
+        }
+        client.newCall(request.build()).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("HTTP ${response.code} for $url")
+            }
+            return read(url, response)
+        }
+    }
+
+    // OkHttp only offers gzip on its own. Setting the header adds br when a decoder is present
+    // and turns off OkHttp's transparent gzip, so both are decoded in Payloads from the
+    // Content-Encoding header. The disk cache stores bodies as sent either way.
+    private fun request(url: String): Request.Builder {
+        return Request.Builder().url(url).header("Accept-Encoding", Payloads.acceptEncoding)
+    }
+
+    private fun read(url: String, response: Response): JSONObject {
+        val validator = response.header("ETag") ?: response.header("Last-Modified")
+        if (validator != null) {
+            entries.get(url)?.takeIf { it.validator == validator }?.let {
+                // Unchanged; skip reading the body and keep the parsed data
+                return it.envelope
+            }
+        }
+
+        val body = response.body ?: throw IOException("Empty response for $url")
+        val envelope = Payloads.readJson(body.byteStream(), Payloads.encodingOf(response.header("Content-Encoding")))
+        if (validator != null) {
+            entries.put(url, Entry(validator, envelope))
+        } else {
+            entries.remove(url)
+        }
+        return envelope
+    }
+
+    // Time past max-age, or zero while fresh
+    private fun staleMillis(response: Response): Long {
+        val maxAgeMillis = TimeUnit.SECONDS.toMillis(response.cacheControl.maxAgeSeconds.coerceAtLeast(0).toLong())
+        val ageMillis = System.currentTimeMillis() - response.receivedResponseAtMillis +
+            TimeUnit.SECONDS.toMillis(response.header("Age")?.toLongOrNull() ?: 0)
+        return (ageMillis - maxAgeMillis).coerceAtLeast(0)
+    }
+
+    private fun staleWindowSeconds(response: Response): Long {
+        val directive = response.headers("Cache-Control").firstNotNullOfOrNull {
+            STALE_WHILE_REVALIDATE.find(it)?.groupValues?.get(1)?.toLongOrNull()
+        }
+        return directive ?: staleWhileRevalidateSeconds
+    }
+
+    companion object {
+        private const val TAG = "EnvelopeRepository"
+        private const val MAX_MEMORY_ENTRIES = 64
+        private const val HTTP_GATEWAY_TIMEOUT = 504
+        const val DEFAULT_STALE_WHILE_REVALIDATE_SECONDS = 24 * 60 * 60L
+
+        private val STALE_WHILE_REVALIDATE = Regex("stale-while-revalidate=(\\d+)")
+    }
+}
@@ -0,0 +1,241 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.os.Handler
+import android.os.Looper
+import android.os.Message
+import android.util.Log
+import android.view.Choreographer
+import androidx.annotation.MainThread
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.ArrayDeque
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Meters the SDK's main-thread view work against a per-frame budget.
+ *
+ * Non-urgent work (standby detail views, prefetch binds, off-screen sections) is queued
+ * and run right after a frame has been drawn, for as long as the frame budget allows, so
+ * that it spreads over several frames instead of stalling the video behind it. Urgent
+ * work, such as binding the details the user just asked for, runs immediately but is
+ * still measured. Every frame in which SDK work went over budget is reported.
+ */
+object FrameScheduler : Choreographer.FrameCallback {
+    private const val TAG = "FrameScheduler"
+    private const val DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L
+    private const val MIN_FRAME_INTERVAL_NANOS = 6_000_000L
+    private const val MAX_FRAME_INTERVAL_NANOS = 34_000_000L
+
+    /**
+     * When queued work may run
+     */
+    enum class Priority {
+        /** In the next frames, in order */
+        NORMAL,
+
+        /** Only in frames with no [NORMAL] work left */
+        IDLE
+    }
+
+    /**
+     * SDK work in one frame that exceeded the budget
+     *
+     * @property frameStartNanos Approximate start of the frame on the [System.nanoTime] clock.
+     * @property taskNames Work charged to the frame, in the order it ran.
+     */
+    data class FrameReport(
+        val frameStartNanos: Long,
+        val spentNanos: Long,
+        val budgetNanos: Long,
+        val taskNames: List<String>
+    )
+
+    /**
+     * Cancels a queued task; no effect once it has run
+     */
+    fun interface Handle {
+        fun cancel()
+    }
+
+    private class Task(val name: String, val action: () -> Unit) {
+        var cancelled = false
+    }
+
+    private val normal = ArrayDeque<Task>()
+    private val idle = ArrayDeque<Task>()
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    private var frameCallbackPosted = false
+    private var lastFrameTimeNanos = 0L
+    private var frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS
+    private var currentSlot = -1L
+    private var currentFrameSpentNanos = 0L
+    private val currentFrameTasks = ArrayList<String>()
+
+    /**
+     * Share of the frame interval the SDK may use for queued work
+     */
+    @Volatile
+    var budgetFraction = 0.4f
+
+    /**
+     * Frames in which SDK work exceeded the budget since process start
+     */
+    @Volatile
+    var framesOverBudget = 0
+        private set
+
+    /**
+     * Called on the main thread for every frame over budget
+     */
+    @Volatile
+    var onFrameOverBudget: ((FrameReport) -> Unit)? = null
+
+    val pendingCount: Int
+        get() = normal.size + idle.size
+
+    private val budgetNanos: Long
+        get() = (frameIntervalNanos * budgetFraction).toLong()
+
+    /**
+     * Queues [action] to run on the main thread after an upcoming frame
+     */
+    @MainThread
+    fun post(name: String, priority: Priority = Priority.NORMAL, action: () -> Unit): Handle {
+        val task = Task(name, action)
+        when (priority) {
+            Priority.NORMAL -> normal.add(task)
+            Priority.IDLE -> idle.add(task)
+        }
+        ensureFrameCallback()
+        return Handle {
+            task.cancelled = true
+            normal.remove(task)
+            idle.remove(task)
+        }
+    }
+
+    /**
+     * Suspends until [action] has run in a frame slot and returns its result.
+     * Call from the main thread; cancelling the caller removes the task from the queue.
+     *
+     * @param onDiscarded Releases a result that was produced but not delivered, because the
+     * caller was cancelled after the action had run.
+     */
+    suspend fun <T> runInFrame(
+        name: String,
+        priority: Priority = Priority.NORMAL,
+        onDiscarded: ((T) -> Unit)? = null,
+        action: () -> T
+    ): T {
+        return suspendCancellableCoroutine { continuation ->
+            val handle = post(name, priority) {
+                // Cancelled while the removal was still on its way to the main thread
+                if (!continuation.isActive) {
+                    return@post
+                }
+                try {
+                    val result = action()
+                    continuation.resume(result) { onDiscarded?.invoke(result) }
+                } catch (e: Exception) {
+                    continuation.resumeWithException(e)
+                }
+            }
+            continuation.invokeOnCancellation {
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    handle.cancel()
+                } else {
+                    mainHandler.post { handle.cancel() }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs urgent work immediately and charges its duration to the current frame
+     */
+    @MainThread
+    fun <T> runUrgent(name: String, action: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return action()
+        } finally {
+            charge(name, System.nanoTime() - start)
+        }
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+        frameCallbackPosted = false
+        if (lastFrameTimeNanos > 0) {
+            val interval = frameTimeNanos - lastFrameTimeNanos
+            // Skipped frames say nothing about the refresh rate
+            if (interval in MIN_FRAME_INTERVAL_NANOS..MAX_FRAME_INTERVAL_NANOS) {
+                frameIntervalNanos = interval
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos
+
+        // Run after this frame's traversal rather than inside the animation callbacks
+        val message = Message.obtain(mainHandler) { runQueued() }
+        message.isAsynchronous = true
+        mainHandler.sendMessageAtFrontOfQueue(message)
+    }
+
+    private fun runQueued() {
+        // Urgent work already run in this frame counts against the budget
+        val deadline = System.nanoTime() + budgetNanos - spentInCurrentFrame()
+        while (System.nanoTime() < deadline) {
+            val task = normal.pollFirst() ?: idle.pollFirst() ?: break
+            if (task.cancelled) {
+                continue
+            }
+            val start = System.nanoTime()
+            try {
+                task.action()
+            } catch (e: Exception) {
+                Log.w(TAG, "Error running ${task.name}: ${e.message}")
+            }
+            charge(task.name, System.nanoTime() - start)
+        }
+        if (pendingCount > 0) {
+            ensureFrameCallback()
+        }
+    }
+
+    // Work is attributed to frame slots of the current interval, which also covers
+    // urgent work while no frame callback is pending
+    private fun currentFrameSlot(): Long = System.nanoTime() / frameIntervalNanos
+
+    private fun spentInCurrentFrame(): Long {
+        if (currentFrameSlot() != currentSlot) {
+            return 0
+        }
+        return currentFrameSpentNanos
+    }
+
+    private fun charge(name: String, nanos: Long) {
+        val slot = currentFrameSlot()
+        if (slot != currentSlot) {
+            currentSlot = slot
+            currentFrameSpentNanos = 0
+            currentFrameTasks.clear()
+        }
+        val wasOverBudget = currentFrameSpentNanos > budgetNanos
+        currentFrameSpentNanos += nanos
+        currentFrameTasks.add(name)
+
+        if (!wasOverBudget && currentFrameSpentNanos > budgetNanos) {
+            framesOverBudget++
+            val report = FrameReport(slot * frameIntervalNanos, currentFrameSpentNanos, budgetNanos, currentFrameTasks.toList())
+            Log.d(TAG, "Frame over budget: ${report.spentNanos / 1000} us of ${report.budgetNanos / 1000} us by ${report.taskNames}")
+            onFrameOverBudget?.invoke(report)
+        }
+    }
+
+    private fun ensureFrameCallback() {
+        if (!frameCallbackPosted) {
+            frameCallbackPosted = true
+            Choreographer.getInstance().postFrameCallback(this)
+        }
+    }
+}
@@ -5,42 +5,251 @@ import android.view.View
 import android.view.ViewGroup
 import androidx.recyclerview.widget.RecyclerView
 import com.yandex.div.core.view2.Div2View
-import com.yandex.div.data.DivParsingEnvironment
-import com.yandex.div.json.ParsingErrorLogger
 import com.yandex.div2.DivData
+import io.sourcesync.sdk.core.TemplateRegistry
+import org.json.JSONArray
 import org.json.JSONObject
 
 /**
  * Utility class for layout-related operations.
  */
 object LayoutUtils {
-    fun JSONObject.asTemplateAndCardParsed(): DivData {
-        val templates = getJSONObject("templates")
-        val card = getJSONObject("card")
-        val environment = DivParsingEnvironment(ParsingErrorLogger.LOG)
-        environment.parseTemplates(templates)
-        return DivData(environment, card)
+    private val IMAGE_URL_KEYS = setOf("image_url", "gif_url")
+    private val MERGEABLE_CARD_KEYS = setOf("log_id", "states", "variables", "timers")
+
+    // A set_state action URL and the root state id it starts with
+    private val SET_STATE_URL = Regex("""^(div-action://set_state\?(?:.*&)?state_id=)(\d+)(?=$|/|&)""")
+
+    /**
+     * Parses an envelope, resolving `template_refs` and reusing parsed templates, see [TemplateCache]
+     */
+    fun JSONObject.asTemplateAndCardParsed(): DivData = TemplateCache.parse(this)
+
+    /**
+     * Merges a preview and a details envelope into one envelope whose card shows the
+     * preview as root state [previewStateId] and the details as root state [detailsStateId].
+     * Card variables and timers are combined. `set_state` actions that address the root state
+     * of a card, e.g. `state_id=0/card.likes/liked`, are renumbered to the card's new state.
+     *
+     * @return The merged envelope, or null when both envelopes define a template, template
+     * reference, variable or timer with the same name but different content, when a card has
+     * more than one state or fields that can't be merged, or when a template addresses a root
+     * state itself.
+     */
+    fun mergeAsStates(
+        preview: JSONObject,
+        details: JSONObject,
+        previewStateId: Long,
+        detailsStateId: Long
+    ): JSONObject? {
+        val templates = mergeTemplates(preview, details, "templates") ?: return null
+        val templateRefs = mergeTemplates(preview, details, TemplateRegistry.REFS_KEY) ?: return null
+        // Templates are shared by both states, so their actions can't be renumbered per state
+        if (addressesRootState(templates)) {
+            return null
+        }
+
+        val previewCard = cardAsState(preview.getJSONObject("card"), previewStateId) ?: return null
+        val detailsCard = cardAsState(details.getJSONObject("card"), detailsStateId) ?: return null
+        val card = JSONObject()
+            .put("log_id", previewCard.optString("log_id", "sourcesync_activation"))
+            .put(
+                "states", JSONArray()
+                    .put(previewCard.getJSONArray("states").getJSONObject(0))
+                    .put(detailsCard.getJSONArray("states").getJSONObject(0))
+            )
+
+        val variables = mergeNamed(previewCard.optJSONArray("variables"), detailsCard.optJSONArray("variables"), "name")
+            ?: return null
+        if (variables.length() > 0) {
+            card.put("variables", variables)
+        }
+
+        val timers = mergeNamed(previewCard.optJSONArray("timers"), detailsCard.optJSONArray("timers"), "id")
+            ?: return null
+        if (timers.length() > 0) {
+            card.put("timers", timers)
+        }
+
+        val merged = JSONObject()
+            .put("templates", templates)
+            .put("card", card)
+        if (templateRefs.length() > 0) {
+            merged.put(TemplateRegistry.REFS_KEY, templateRefs)
+        }
+        return merged
+    }
+
+    // Union of a named object of both envelopes, or null when a name has different values
+    private fun mergeTemplates(preview: JSONObject, details: JSONObject, key: String): JSONObject? {
+        val merged = JSONObject()
+        for (envelope in listOf(preview, details)) {
+            val source = envelope.optJSONObject(key) ?: continue
+            val names = source.keys()
+            while (names.hasNext()) {
+                val name = names.next()
+                val value = source.get(name)
+                val existing = merged.opt(name)
+                if (existing != null && existing.toString() != value.toString()) {
+                    return null
+                }
+                merged.put(name, value)
+            }
+        }
+        return merged
+    }
+
+    // The card with its only state renumbered to stateId, or null when it can't be merged as is
+    private fun cardAsState(card: JSONObject, stateId: Long): JSONObject? {
+        val states = card.optJSONArray("states") ?: return null
+        if (states.length() != 1 || card.keys().asSequence().any { it !in MERGEABLE_CARD_KEYS }) {
+            return null
+        }
+        val state = states.getJSONObject(0)
+        val oldId = state.getLong("state_id")
+        val renumbered = if (oldId == stateId) card else withRootState(card, oldId, stateId) as JSONObject
+        return JSONObject()
+            .put("log_id", renumbered.opt("log_id"))
+            .put(
+                "states", JSONArray().put(
+                    JSONObject()
+                        .put("state_id", stateId)
+                        .put("div", renumbered.getJSONArray("states").getJSONObject(0).getJSONObject("div"))
+                )
+            )
+            .putOpt("variables", renumbered.opt("variables"))
+            .putOpt("timers", renumbered.opt("timers"))
+    }
+
+    // Copy of the value with set_state actions on root state `from` moved to `to`; unchanged
+    // subtrees are shared with the original
+    private fun withRootState(value: Any, from: Long, to: Long): Any = when (value) {
+        is JSONObject -> {
+            var copy: JSONObject? = null
+            for (key in value.keys().asSequence().toList()) {
+                val child = value.get(key)
+                val renumbered = if (key == "state_id" && value.optString("type") == "set_state") {
+                    rootStateId(child.toString(), from, to) ?: child
+                } else {
+                    withRootState(child, from, to)
+                }
+                if (renumbered !== child) {
+                    copy = copy ?: JSONObject().also { target ->
+                        value.keys().forEach { target.put(it, value.get(it)) }
+                    }
+                    copy.put(key, renumbered)
+                }
+            }
+            copy ?: value
+        }
+        is JSONArray -> {
+            var copy: JSONArray? = null
+            for (i in 0 until value.length()) {
+                val child = value.get(i)
+                val renumbered = withRootState(child, from, to)
+                if (renumbered !== child) {
+                    copy = copy ?: JSONArray().also { target ->
+                        for (j in 0 until value.length()) target.put(value.get(j))
+                    }
+                    copy.put(i, renumbered)
+                }
+            }
+            copy ?: value
+        }
+        is String -> {
+            val match = SET_STATE_URL.find(value)
+            if (match != null && match.groupValues[2].toLongOrNull() == from) {
+                match.groupValues[1] + to + value.substring(match.range.last + 1)
+            } else {
+                value
+            }
+        }
+        else -> value
+    }
+
+    // Typed set_state actions carry the path without the URL
+    private fun rootStateId(path: String, from: Long, to: Long): String? {
+        val root = path.substringBefore('/')
+        return if (root.toLongOrNull() == from) to.toString() + path.substring(root.length) else null
+    }
+
+    private fun addressesRootState(value: Any): Boolean = when (value) {
+        is JSONObject -> value.keys().asSequence().any { key ->
+            val child = value.get(key)
+            (key == "state_id" && value.optString("type") == "set_state") || addressesRootState(child)
+        }
+        is JSONArray -> (0 until value.length()).any { addressesRootState(value.get(it)) }
+        is String -> SET_STATE_URL.containsMatchIn(value)
+        else -> false
+    }
+
+    private fun mergeNamed(first: JSONArray?, second: JSONArray?, key: String): JSONArray? {
+        val merged = LinkedHashMap<String, JSONObject>()
+        for (array in listOf(first, second)) {
+            array ?: continue
+            for (i in 0 until array.length()) {
+                val item = array.getJSONObject(i)
+                val name = item.getString(key)
+                val existing = merged[name]
+                if (existing != null && existing.toString() != item.toString()) {
+                    return null
+                }
+                merged[name] = item
+            }
+        }
+        return JSONArray(merged.values)
     }
 
     /**
-     * Safely cleanup all RecyclerViews in the view hierarchy
+     * Collects the image URLs referenced directly by an envelope, templates included.
+     * Values bound through template parameters are picked up from the card side.
+     */
+    fun JSONObject.collectImageUrls(): List<String> {
+        val urls = LinkedHashSet<String>()
+        val pending = ArrayDeque<Any>().apply { addLast(this@collectImageUrls) }
+
+        while (pending.isNotEmpty()) {
+            when (val node = pending.removeLast()) {
+                is JSONObject -> {
+                    val keys = node.keys()
+                    while (keys.hasNext()) {
+                        val key = keys.next()
+                        val value = node.opt(key)
+                        if (key in IMAGE_URL_KEYS && value is String && value.startsWith("http")) {
+                            urls.add(value)
+                        } else if (value is JSONObject || value is JSONArray) {
+                            pending.addLast(value)
+                        }
+                    }
+                }
+                is JSONArray -> {
+                    for (i in 0 until node.length()) {
+                        val value = node.opt(i)
+                        if (value is JSONObject || value is JSONArray) {
+                            pending.addLast(value)
+                        }
+                    }
+                }
+            }
+        }
+        return urls.toList()
+    }
+
+    /**
+     * Safely cleanup all RecyclerViews in the view hierarchy.
+     * Galleries inside gallery items are cleared before the gallery that holds them.
      */
     fun clearRecyclerViews(tag: String, view: View) {
         try {
             if (view is ViewGroup) {
                 for (i in 0 until view.childCount) {
                     val child = view.getChildAt(i)
-                    if (child is RecyclerView) {
-                        try {
-                            child.adapter = null
-                            child.layoutManager = null
-                        } catch (e: Exception) {
-                            Log.w(tag, "Error clearing RecyclerView: ${e.message}")
-                        }
-                    }
                     if (child is ViewGroup) {
                         clearRecyclerViews(tag, child)
                     }
+                    if (child is RecyclerView) {
+                        clearRecyclerView(tag, child)
+                    }
                 }
             }
         } catch (e: Exception) {
@@ -48,6 +257,24 @@ object LayoutUtils {
         }
     }
 
+    /**
+     * Detach the adapter and layout manager of a single RecyclerView.
+     * DivKit galleries return their view holders to the [SharedViewPool].
+     */
+    fun clearRecyclerView(tag: String, recyclerView: RecyclerView) {
+        try {
+            if (SharedViewPool.adopt(recyclerView)) {
+                // Recycles the attached views into the pool without clearing it
+                recyclerView.swapAdapter(null, true)
+            } else {
+                recyclerView.adapter = null
+            }
+            recyclerView.layoutManager = null
+        } catch (e: Exception) {
+            Log.w(tag, "Error clearing RecyclerView: ${e.message}")
+        }
+    }
+
     /**
      * Check if the view is in a safe state for cleanup
      */
@@ -85,42 +312,46 @@ object LayoutUtils {
             divView?.let { view ->
                 // Clear all RecyclerViews first
                 clearRecyclerViews(tag,view)
+                releaseDivView(tag, view)
+            }
+        } catch (e: Exception) {
+            Log.w(tag, "Error during safe cleanup: ${e.message}")
+        }
+    }
+
+    /**
+     * Release the div view itself, assuming its RecyclerViews are already cleared
+     */
+    fun releaseDivView(tag: String, view: Div2View) {
+        // Clear any pending operations
+        view.clearFocus()
 
-                // Clear any pending operations
-                view.clearFocus()
+        // Cleanup the div view with additional safety
+        try {
+            view.cleanup()
+            Log.d(tag, "DivView cleanup completed successfully")
+        } catch (observerException: IllegalStateException) {
+            if (observerException.message?.contains("Observer") == true &&
+                observerException.message?.contains("was not registered") == true
+            ) {
+                Log.w(tag, "Observer issue during cleanup, attempting alternative cleanup")
 
-                // Cleanup the div view with additional safety
+                // Alternative cleanup approach
                 try {
-                    view.cleanup()
-                    Log.d(tag, "DivView cleanup completed successfully")
-                } catch (observerException: IllegalStateException) {
-                    if (observerException.message?.contains("Observer") == true &&
-                        observerException.message?.contains("was not registered") == true
-                    ) {
-                        Log.w(tag, "Observer issue during cleanup, attempting alternative cleanup")
-
-                        // Alternative cleanup approach
-                        try {
-                            // Try to clear all child views manually
-                            if (true) {
-                                view.removeAllViews()
-                            }
-                            Log.d(tag, "Alternative cleanup completed")
-                        } catch (alternativeException: Exception) {
-                            Log.w(
-                                tag,
-                                "Alternative cleanup failed: ${alternativeException.message}"
-                            )
-                        }
-                    } else {
-                        throw observerException
-                    }
-                } catch (cleanupException: Exception) {
-                    Log.w(tag, "DivView cleanup failed: ${cleanupException.message}")
+                    // Try to clear all child views manually
+                    view.removeAllViews()
+                    Log.d(tag, "Alternative cleanup completed")
+                } catch (alternativeException: Exception) {
+                    Log.w(
+                        tag,
+                        "Alternative cleanup failed: ${alternativeException.message}"
+                    )
                 }
+            } else {
+                Log.w(tag, "DivView cleanup failed: ${observerException.message}")
             }
-        } catch (e: Exception) {
-            Log.w(tag, "Error during safe cleanup: ${e.message}")
+        } catch (cleanupException: Exception) {
+            Log.w(tag, "DivView cleanup failed: ${cleanupException.message}")
         }
     }
-}
\ No newline at end of file
+}
@@ -17,31 +17,35 @@ import com.yandex.div.core.images.DivImageLoader
 import com.yandex.div.core.images.LoadReference
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.MainScope
+import kotlinx.coroutines.cancel
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 
 class PicassoDivImageLoader(
     context: Context,
     httpClientBuilder: okhttp3.OkHttpClient.Builder?,
-) : DivImageLoader {
+) : DivImageLoader, ResourceManager.Trimmable {
 
     constructor(context: Context) : this(context, null)
 
     private val appContext = context.applicationContext
-    private val picasso by lazy { createPicasso() }
+
+    // Picasso and OkHttp are shared by all loaders, see SharedHttp
+    private val picassoDelegate = lazy { SharedHttp.picasso(appContext) }
+    private val picasso by picassoDelegate
     private val targets = TargetList()
-    private val httpClient = (httpClientBuilder ?: okhttp3.OkHttpClient.Builder())
-        .cache(okhttp3.Cache(context.cacheDir, DISK_CACHE_SIZE))
-        .build()
+    private val httpClient by lazy {
+        httpClientBuilder?.let { SharedHttp.client(appContext, it) } ?: SharedHttp.client(appContext)
+    }
+    private val ownsScope = context !is LifecycleOwner
     private val coroutineScope = (context as? LifecycleOwner)?.lifecycleScope ?: MainScope()
 
     val isIdle: Boolean
         get() = targets.size == 0
 
-    private fun createPicasso(): Picasso {
-        return Picasso.Builder(appContext)
-            .downloader(com.squareup.picasso.OkHttp3Downloader(appContext, DISK_CACHE_SIZE))
-            .build()
+    init {
+        ResourceManager.install(appContext)
+        ResourceManager.register(this)
     }
 
     override fun loadImage(imageUrl: String, callback: DivImageDownloadCallback): LoadReference {
@@ -93,8 +97,52 @@ class PicassoDivImageLoader(
         return loadReference
     }
 
+    /**
+     * Warms the caches for the given images without binding them to a target
+     *
+     * @param imageUrls Images to fetch.
+     * @param tag Tag to cancel the fetches with via [cancelPrefetch].
+     */
+    fun prefetch(imageUrls: Collection<String>, tag: Any) {
+        imageUrls.forEach { imageUrl ->
+            picasso.load(imageUrl.toUri()).tag(tag).fetch()
+        }
+    }
+
+    /**
+     * Cancels fetches started by [prefetch] with the given tag
+     */
+    fun cancelPrefetch(tag: Any) {
+        picasso.cancelTag(tag)
+    }
+
+    override val trimName: String = "PicassoDivImageLoader"
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        if (pressure == ResourceManager.Pressure.LOW || !picassoDelegate.isInitialized()) {
+            return null
+        }
+        val cachedBytes = picasso.snapshot.size
+        picasso.evictAll()
+        return if (cachedBytes > 0) "${cachedBytes / 1024} KB of decoded images" else null
+    }
+
+    /**
+     * Cancels the loads started by this loader and the coroutine scope it owns.
+     * The shared Picasso instance stays up for other loaders. The loader must not be used afterwards.
+     */
+    fun release() {
+        if (ownsScope) {
+            coroutineScope.cancel()
+        }
+        if (picassoDelegate.isInitialized()) {
+            targets.forEach { picasso.cancelRequest(it) }
+        }
+        targets.clean()
+        ResourceManager.unregister(this)
+    }
+
     private companion object {
-        const val DISK_CACHE_SIZE = 16_777_216L
         val EMPTY_LOAD_REFERENCE = LoadReference { }
     }
 
@@ -144,6 +192,10 @@ class PicassoDivImageLoader(
             activeTargets.remove(target)
         }
 
+        fun forEach(action: (com.squareup.picasso.Target) -> Unit) {
+            activeTargets.toList().forEach(action)
+        }
+
         fun clean() {
             activeTargets.clear()
         }
@@ -0,0 +1,171 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import android.os.Looper
+import android.util.Log
+import androidx.annotation.MainThread
+import java.lang.ref.WeakReference
+
+/**
+ * Central registry of SDK resources that can be released under memory pressure.
+ *
+ * Installed on the application context the first time an SDK view is created, it maps
+ * [ComponentCallbacks2] trim levels to a [Pressure] and asks every registered [Trimmable]
+ * to shrink accordingly. What was released is logged and passed to [onTrimReport].
+ */
+object ResourceManager : ComponentCallbacks2 {
+    private const val TAG = "ResourceManager"
+
+    /**
+     * How much the SDK should give back
+     */
+    enum class Pressure {
+        /** Shrink caches a little */
+        LOW,
+
+        /** Drop speculative and hidden work, halve caches */
+        MEDIUM,
+
+        /** Release everything that can be rebuilt */
+        HIGH
+    }
+
+    /**
+     * A resource holder that can give memory back
+     */
+    interface Trimmable {
+        /**
+         * Name used in trim reports
+         */
+        val trimName: String
+
+        /**
+         * Releases memory for the given pressure
+         * @return A short description of what was released, or null if nothing was.
+         */
+        fun trimMemory(pressure: Pressure): String?
+    }
+
+    /**
+     * Result of one trim pass
+     *
+     * @property level The [ComponentCallbacks2] trim level, or -1 for onLowMemory.
+     * @property released Description of what each component released, by component name.
+     * Further instances of a component are listed as `name#2`, `name#3` and so on.
+     */
+    data class TrimReport(
+        val level: Int,
+        val pressure: Pressure,
+        val released: Map<String, String>
+    )
+
+    private val trimmables = ArrayList<WeakReference<Trimmable>>()
+    private var installed = false
+
+    /**
+     * Called on the main thread after every trim pass
+     */
+    @Volatile
+    var onTrimReport: ((TrimReport) -> Unit)? = null
+
+    /**
+     * Registers for memory callbacks on the application context, once per process
+     */
+    fun install(context: Context) {
+        synchronized(this) {
+            if (installed) {
+                return
+            }
+            installed = true
+        }
+        context.applicationContext.registerComponentCallbacks(this)
+        register(ActivationDataCache)
+        register(DeferredCleanup)
+        register(SnapshotCache)
+    }
+
+    /**
+     * Adds a resource holder. It is held weakly, so views need not unregister.
+     */
+    fun register(trimmable: Trimmable) {
+        synchronized(trimmables) {
+            trimmables.removeAll { it.get() == null }
+            if (trimmables.none { it.get() === trimmable }) {
+                trimmables.add(WeakReference(trimmable))
+            }
+        }
+    }
+
+    fun unregister(trimmable: Trimmable) {
+        synchronized(trimmables) {
+            trimmables.removeAll { it.get() == null || it.get() === trimmable }
+        }
+    }
+
+    /**
+     * Runs a trim pass for the given pressure, e.g. before starting 4K playback.
+     * Trimming touches views, so it must run on the main thread like the system callbacks.
+     */
+    @MainThread
+    fun trim(pressure: Pressure): TrimReport {
+        check(Looper.myLooper() == Looper.getMainLooper()) { "ResourceManager.trim must be called on the main thread" }
+        return trim(-1, pressure)
+    }
+
+    override fun onTrimMemory(level: Int) {
+        trim(level, pressureFor(level))
+    }
+
+    @Deprecated("Deprecated in Java")
+    override fun onLowMemory() {
+        trim(-1, Pressure.HIGH)
+    }
+
+    override fun onConfigurationChanged(newConfig: Configuration) = Unit
+
+    @Suppress("DEPRECATION")
+    private fun pressureFor(level: Int): Pressure {
+        return when {
+            level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE -> Pressure.HIGH
+            level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN -> Pressure.MEDIUM
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL -> Pressure.HIGH
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW -> Pressure.MEDIUM
+            else -> Pressure.LOW
+        }
+    }
+
+    private fun trim(level: Int, pressure: Pressure): TrimReport {
+        val targets = synchronized(trimmables) {
+            trimmables.removeAll { it.get() == null }
+            trimmables.mapNotNull { it.get() }
+        }
+
+        val released = LinkedHashMap<String, String>()
+        targets.forEach { trimmable ->
+            try {
+                trimmable.trimMemory(pressure)?.let { released[reportName(released, trimmable.trimName)] = it }
+            } catch (e: Exception) {
+                Log.w(TAG, "Error trimming ${trimmable.trimName}: ${e.message}")
+            }
+        }
+
+        val report = TrimReport(level, pressure, released)
+        Log.i(TAG, "Trim level $level ($pressure) released: ${released.ifEmpty { "nothing" }}")
+        onTrimReport?.invoke(report)
+        return report
+    }
+
+    // Each ActivationView registers under the same name; later ones get a counter
+    private fun reportName(released: Map<String, String>, name: String): String {
+        if (name !in released) {
+            return name
+        }
+        var index = 2
+        while ("$name#$index" in released) {
+            index++
+        }
+        return "$name#$index"
+    }
+}
@@ -0,0 +1,106 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import com.squareup.picasso.Downloader
+import com.squareup.picasso.OkHttp3Downloader
+import com.squareup.picasso.Picasso
+import okhttp3.Cache
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import java.io.File
+
+/**
+ * Process-wide HTTP stack for image loading.
+ *
+ * Every [PicassoDivImageLoader] shares one OkHttp connection pool, dispatcher and disk
+ * cache, and one [Picasso] instance, so creating a loader per view does not add threads,
+ * sockets or cache files.
+ *
+ * The client touches the cache directory when it is built, so it must only be requested
+ * off the main thread. Picasso itself is safe to create on the main thread: its client is
+ * built on the first download, which runs on a Picasso worker.
+ */
+internal object SharedHttp {
+    private const val CACHE_DIR = "sourcesync-images"
+    private const val DISK_CACHE_SIZE = 16_777_216L
+    private const val ENVELOPE_CACHE_DIR = "sourcesync-envelopes"
+    private const val ENVELOPE_CACHE_SIZE = 4_194_304L
+
+    @Volatile
+    private var client: OkHttpClient? = null
+
+    @Volatile
+    private var envelopeClient: OkHttpClient? = null
+
+    @Volatile
+    private var picasso: Picasso? = null
+
+    /**
+     * Open connections in the shared pool, idle or in use
+     */
+    val connectionCount: Int
+        get() = client?.let { it.connectionPool.connectionCount() } ?: 0
+
+    @WorkerThread
+    fun client(context: Context): OkHttpClient {
+        client?.let { return it }
+        return synchronized(this) {
+            client ?: OkHttpClient.Builder()
+                .cache(Cache(File(context.applicationContext.cacheDir, CACHE_DIR), DISK_CACHE_SIZE))
+                .build()
+                .also { client = it }
+        }
+    }
+
+    /**
+     * Builds a client from [builder] that still uses the shared pool, dispatcher and cache
+     */
+    @WorkerThread
+    fun client(context: Context, builder: OkHttpClient.Builder): OkHttpClient {
+        val shared = client(context)
+        return builder
+            .connectionPool(shared.connectionPool)
+            .dispatcher(shared.dispatcher)
+            .cache(shared.cache)
+            .build()
+    }
+
+    /**
+     * Client for activation envelopes. Shares the pool and dispatcher, but has its own disk
+     * cache so that images can't evict envelopes.
+     */
+    @WorkerThread
+    fun envelopeClient(context: Context): OkHttpClient {
+        envelopeClient?.let { return it }
+        return synchronized(this) {
+            envelopeClient ?: client(context).newBuilder()
+                .cache(Cache(File(context.applicationContext.cacheDir, ENVELOPE_CACHE_DIR), ENVELOPE_CACHE_SIZE))
+                .build()
+                .also { envelopeClient = it }
+        }
+    }
+
+    fun picasso(context: Context): Picasso {
+        picasso?.let { return it }
+        return synchronized(this) {
+            picasso ?: Picasso.Builder(context.applicationContext)
+                .downloader(DeferredDownloader { OkHttp3Downloader(client(context)) })
+                .build()
+                .also { picasso = it }
+        }
+    }
+
+    /**
+     * Creates the real downloader on the first load, which Picasso runs off the main thread
+     */
+    private class DeferredDownloader(create: () -> Downloader) : Downloader {
+        private val delegate by lazy(create)
+
+        override fun load(request: Request): Response = delegate.load(request)
+
+        // The shared client outlives any Picasso instance
+        override fun shutdown() = Unit
+    }
+}
@@ -0,0 +1,163 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.app.Activity
+import android.app.Application
+import android.content.Context
+import android.content.ContextWrapper
+import android.os.Bundle
+import android.util.Log
+import android.view.View
+import android.view.ViewGroup
+import androidx.annotation.MainThread
+import androidx.recyclerview.widget.RecyclerView
+import com.yandex.div.core.view2.divs.widgets.DivRecyclerView
+
+/**
+ * View holders shared by the DivKit galleries of all SDK views.
+ *
+ * Every gallery bound by an activation view, preview, details or TV card draws from and
+ * returns to one [RecyclerView.RecycledViewPool], so the next details view starts with warm
+ * holders instead of inflating its gallery items again. Cleanup hands the holders back
+ * instead of dropping them, see [LayoutUtils.clearRecyclerView].
+ *
+ * Holder views keep their activity alive, so there is one pool per activity, dropped when
+ * the activity is destroyed. Pager pages are not pooled, since their holders are not
+ * interchangeable with gallery holders. Must be used from the main thread only.
+ */
+object SharedViewPool : ResourceManager.Trimmable {
+    private const val TAG = "SharedViewPool"
+    private const val MAX_HOLDERS_PER_TYPE = 24
+
+    private val pools = HashMap<Activity, Pool>()
+    private var lifecycleRegistered = false
+
+    /**
+     * Number of holders waiting in all pools
+     */
+    val holderCount: Int
+        get() = pools.values.sumOf { it.size }
+
+    /**
+     * Makes every DivKit gallery below [root] use the shared pool. Call after binding.
+     * Galleries inside gallery items are attached as their items come in; galleries bound
+     * later elsewhere, e.g. by a state switch, are adopted on cleanup, see [adopt].
+     */
+    @MainThread
+    fun attach(root: View) {
+        val pool = poolFor(root.context) ?: return
+        attach(root, pool)
+    }
+
+    private fun attach(view: View, pool: RecyclerView.RecycledViewPool) {
+        if (view is DivRecyclerView && view.recycledViewPool !== pool) {
+            view.setRecycledViewPool(pool)
+            view.addOnChildAttachStateChangeListener(NestedGalleries(pool))
+        }
+        if (view is ViewGroup) {
+            for (i in 0 until view.childCount) {
+                attach(view.getChildAt(i), pool)
+            }
+        }
+    }
+
+    /**
+     * Makes a DivKit gallery use the shared pool if it doesn't yet, so that its holders are
+     * returned to the pool when it is cleared
+     *
+     * @return Whether [recyclerView] now draws from a shared pool.
+     */
+    @MainThread
+    fun adopt(recyclerView: RecyclerView): Boolean {
+        if (recyclerView is DivRecyclerView && !isShared(recyclerView)) {
+            poolFor(recyclerView.context)?.let { recyclerView.setRecycledViewPool(it) }
+        }
+        return isShared(recyclerView)
+    }
+
+    /**
+     * Whether [recyclerView] draws from a shared pool, whose holders must outlive its adapter
+     */
+    fun isShared(recyclerView: RecyclerView): Boolean {
+        return recyclerView.recycledViewPool is Pool
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        if (pressure == ResourceManager.Pressure.LOW) {
+            return null
+        }
+        val released = holderCount
+        pools.values.forEach { it.clear() }
+        return if (released > 0) "$released gallery view holders" else null
+    }
+
+    private fun poolFor(context: Context): RecyclerView.RecycledViewPool? {
+        val activity = context.findActivity() ?: return null
+        pools[activity]?.let { return it }
+
+        if (!lifecycleRegistered) {
+            activity.application.registerActivityLifecycleCallbacks(lifecycleCallbacks)
+            ResourceManager.register(this)
+            lifecycleRegistered = true
+        }
+        return Pool().also { pools[activity] = it }
+    }
+
+    private fun Context.findActivity(): Activity? {
+        return when (this) {
+            is Activity -> this
+            is ContextWrapper -> baseContext?.findActivity()
+            else -> null
+        }
+    }
+
+    /**
+     * Attaches galleries inside the items of a gallery when the items are added
+     */
+    private class NestedGalleries(private val pool: RecyclerView.RecycledViewPool) :
+        RecyclerView.OnChildAttachStateChangeListener {
+
+        override fun onChildViewAttachedToWindow(view: View) {
+            if (view is ViewGroup) {
+                attach(view, pool)
+            }
+        }
+
+        override fun onChildViewDetachedFromWindow(view: View) = Unit
+    }
+
+    /**
+     * Raises the per type limit for every view type it sees
+     */
+    private class Pool : RecyclerView.RecycledViewPool() {
+        private val sizedTypes = HashSet<Int>()
+
+        val size: Int
+            get() = sizedTypes.sumOf { getRecycledViewCount(it) }
+
+        override fun putRecycledView(scrap: RecyclerView.ViewHolder) {
+            val viewType = scrap.itemViewType
+            if (sizedTypes.add(viewType)) {
+                setMaxRecycledViews(viewType, MAX_HOLDERS_PER_TYPE)
+            }
+            super.putRecycledView(scrap)
+        }
+    }
+
+    private val lifecycleCallbacks = object : Application.ActivityLifecycleCallbacks {
+        override fun onActivityDestroyed(activity: Activity) {
+            pools.remove(activity)?.let { pool ->
+                pool.clear()
+                Log.d(TAG, "Dropped view holders of ${activity.javaClass.simpleName}")
+            }
+        }
+
+        override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) = Unit
+        override fun onActivityStarted(activity: Activity) = Unit
+        override fun onActivityResumed(activity: Activity) = Unit
+        override fun onActivityPaused(activity: Activity) = Unit
+        override fun onActivityStopped(activity: Activity) = Unit
+        override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) = Unit
+    }
+}
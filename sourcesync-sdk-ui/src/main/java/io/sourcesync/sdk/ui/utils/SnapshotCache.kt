@@ -0,0 +1,73 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.util.Log
+import android.util.LruCache
+import android.view.View
+
+/**
+ * Process-wide LRU of rasterized activation previews, bounded in bytes.
+ *
+ * Entries are keyed by the envelope content key (see [ActivationDataCache.keyOf]) and the
+ * requested size, so a snapshot is only reused for the same content at the same size.
+ * Snapshots are shown as a placeholder while a new Div2View binds behind them.
+ */
+object SnapshotCache : ResourceManager.Trimmable {
+    private const val TAG = "SnapshotCache"
+    private const val MAX_BYTES = 16L * 1024 * 1024
+
+    private val maxBytes = minOf(MAX_BYTES, Runtime.getRuntime().maxMemory() / 16).toInt()
+
+    private val entries = object : LruCache<String, Bitmap>(maxBytes) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.byteCount
+    }
+
+    /**
+     * Builds the cache key for content drawn at the requested size
+     *
+     * @param contentKey Key of the envelope, see [ActivationDataCache.keyOf].
+     * @param width Requested width in pixels or a layout params constant.
+     * @param height Requested height in pixels or a layout params constant.
+     */
+    fun keyOf(contentKey: String, width: Int, height: Int): String = "$contentKey@${width}x$height"
+
+    fun get(key: String): Bitmap? = entries.get(key)
+
+    /**
+     * Draws the laid out view into a bitmap and caches it under [key]
+     * @return The snapshot, or null if the view has no size or memory is short.
+     */
+    fun capture(key: String, view: View): Bitmap? {
+        if (view.width <= 0 || view.height <= 0) {
+            return null
+        }
+        return try {
+            val bitmap = Bitmap.createBitmap(view.width, view.height, Bitmap.Config.ARGB_8888)
+            view.draw(Canvas(bitmap))
+            entries.put(key, bitmap)
+            Log.d(TAG, "Captured ${bitmap.byteCount / 1024} KB (${entries.size() / 1024} KB cached)")
+            bitmap
+        } catch (e: OutOfMemoryError) {
+            Log.w(TAG, "Not enough memory for a snapshot")
+            null
+        }
+    }
+
+    fun clear() {
+        entries.evictAll()
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        val before = entries.size()
+        when (pressure) {
+            ResourceManager.Pressure.LOW -> entries.trimToSize(before * 3 / 4)
+            ResourceManager.Pressure.MEDIUM -> entries.trimToSize(before / 2)
+            ResourceManager.Pressure.HIGH -> entries.evictAll()
+        }
+        val released = before - entries.size()
+        return if (released > 0) "${released / 1024} KB of preview snapshots" else null
+    }
+}
@@ -0,0 +1,105 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.util.Log
+import android.util.LruCache
+import com.yandex.div.data.DivParsingEnvironment
+import com.yandex.div.json.ParsingErrorLogger
+import com.yandex.div.json.templates.CachingTemplateProvider
+import com.yandex.div.json.templates.InMemoryTemplateProvider
+import com.yandex.div.json.templates.TemplateProvider
+import com.yandex.div2.DivData
+import com.yandex.div2.DivTemplate
+import io.sourcesync.sdk.core.Envelope
+import io.sourcesync.sdk.core.LayoutOptimizer
+import io.sourcesync.sdk.core.TemplateRegistry
+import io.sourcesync.sdk.ui.SourceSyncUi
+import org.json.JSONObject
+
+/**
+ * Process-wide LRU of parsed DivKit templates, keyed by [TemplateRegistry.internKeys].
+ *
+ * Envelopes that carry or refer to the same template only parse it once; later envelopes
+ * start from the parsed copy and only parse the templates that are new to them.
+ * Parsed templates are immutable and shared between all parsing environments.
+ */
+object TemplateCache : ResourceManager.Trimmable {
+    private const val TAG = "TemplateCache"
+    private const val MAX_TEMPLATES = 256
+
+    private val parsed = LruCache<String, DivTemplate>(MAX_TEMPLATES)
+
+    init {
+        ResourceManager.register(this)
+    }
+
+    /**
+     * Parses the envelope, reusing parsed templates from earlier envelopes
+     *
+     * @throws org.json.JSONException When a part is missing or a template reference is unknown.
+     */
+    fun parse(json: JSONObject): DivData {
+        val envelope = Envelope.split(optimized(json))
+        val templates = TemplateRegistry.resolve(envelope)
+        val keys = TemplateRegistry.internKeys(templates)
+
+        val provider = InMemoryTemplateProvider<DivTemplate>()
+        val missing = JSONObject()
+        for ((name, key) in keys) {
+            val template = parsed.get(key)
+            if (template != null) {
+                provider.put(name, template)
+            } else {
+                missing.put(name, templates.get(name))
+            }
+        }
+
+        val environment = DivParsingEnvironment(
+            ParsingErrorLogger.LOG,
+            CachingTemplateProvider(provider, TemplateProvider.empty())
+        )
+        if (missing.length() > 0) {
+            // Templates the missing ones are built on are found in the provider
+            environment.parseTemplates(missing)
+            val names = missing.keys()
+            while (names.hasNext()) {
+                val name = names.next()
+                environment.templates.get(name)?.let { parsed.put(keys.getValue(name), it) }
+            }
+        }
+        if (keys.size > missing.length()) {
+            Log.d(TAG, "Reused ${keys.size - missing.length()} of ${keys.size} templates")
+        }
+        return DivData(environment, envelope.card)
+    }
+
+    private fun optimized(json: JSONObject): JSONObject {
+        if (!SourceSyncUi.optimizeLayouts) {
+            return json
+        }
+        val result = LayoutOptimizer.optimize(json)
+        if (result.collapsed > 0) {
+            val before = result.before
+            val after = result.after
+            Log.d(TAG, "Removed ${result.collapsed} containers: ${before.views} -> ${after.views} views, " +
+                "depth ${before.depth} -> ${after.depth}, ~${before.measureCalls} -> ${after.measureCalls} measure calls")
+        }
+        return result.envelope
+    }
+
+    fun clear() {
+        parsed.evictAll()
+    }
+
+    override val trimName: String = TAG
+
+    override fun trimMemory(pressure: ResourceManager.Pressure): String? {
+        val before = parsed.size()
+        when (pressure) {
+            ResourceManager.Pressure.LOW -> return null
+            ResourceManager.Pressure.MEDIUM -> parsed.trimToSize(before / 2)
+            ResourceManager.Pressure.HIGH -> parsed.evictAll()
+        }
+        val released = before - parsed.size()
+        return if (released > 0) "$released parsed templates" else null
+    }
+}
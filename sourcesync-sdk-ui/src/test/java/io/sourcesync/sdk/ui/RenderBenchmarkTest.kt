@@ -0,0 +1,182 @@
+package io.sourcesync.sdk.ui
+
+import android.app.Activity
+import android.os.Looper
+import android.widget.FrameLayout
+import io.sourcesync.sdk.ui.divkit.ActivationView
+import io.sourcesync.sdk.ui.utils.ActivationDataCache
+import io.sourcesync.sdk.ui.utils.SnapshotCache
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.time.Duration
+import java.util.Properties
+
+/**
+ * Render benchmark that runs headless on the JVM and gates regressions.
+ *
+ * Drives [ActivationView.showPreview], [ActivationView.showDetail] and
+ * [ActivationView.hideDetails] with the demo envelopes, measuring the median wall time
+ * and bytes allocated per call, including the layout pass that follows it. Parse caches
+ * are cleared first so every call takes the cold path.
+ *
+ * Results are compared with `render-baseline.properties` in the module directory, and the
+ * test fails when that file is missing. It only runs with `-PrenderBenchmark`. Record a new
+ * baseline on the CI machine with `-PupdateRenderBaseline`, e.g. with the Render Baseline
+ * workflow, and commit it.
+ */
+@RunWith(RobolectricTestRunner::class)
+class RenderBenchmarkTest {
+    private lateinit var activity: Activity
+    private lateinit var activationView: ActivationView
+
+    private data class Result(val millis: Double, val allocatedKb: Long)
+
+    @Before
+    fun setUp() {
+        activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        activationView = ActivationView(activity)
+        activity.setContentView(activationView, FrameLayout.LayoutParams(1920, 1080))
+        idle()
+    }
+
+    @After
+    fun tearDown() {
+        activationView.cleanup()
+        idle()
+    }
+
+    @Test
+    fun renderCostStaysWithinBaseline() {
+        val preview = asset("div_preview.json")
+        val details = asset("div_details.json")
+        val largeDetails = asset("sample.json")
+
+        val results = linkedMapOf(
+            "showPreview" to measure { activationView.showPreview(preview, 0.3f, 0.2f) {} },
+            "showDetail" to measure(setUp = { activationView.showPreview(preview) {} }) {
+                activationView.showDetail(details, 1f, 1f, null)
+            },
+            "showDetail.large" to measure(setUp = { activationView.showPreview(preview) {} }) {
+                activationView.showDetail(largeDetails, 1f, 1f, null)
+            },
+            "hideDetails" to measure(setUp = {
+                activationView.showPreview(preview) {}
+                activationView.showDetail(details, 1f, 1f, null)
+            }) {
+                activationView.hideDetails()
+            }
+        )
+
+        results.forEach { (name, result) ->
+            println("%-18s %8.2f ms %8d KB".format(name, result.millis, result.allocatedKb))
+        }
+        checkBaseline(results)
+    }
+
+    private fun measure(setUp: () -> Unit = {}, call: () -> Unit): Result {
+        val times = ArrayList<Long>()
+        val allocations = ArrayList<Long>()
+        repeat(WARMUP + ITERATIONS) { iteration ->
+            ActivationDataCache.clear()
+            SnapshotCache.clear()
+            setUp()
+            idle()
+
+            val allocatedBefore = allocatedBytes()
+            val start = System.nanoTime()
+            call()
+            idle()
+            val elapsed = System.nanoTime() - start
+            val allocated = allocatedBytes() - allocatedBefore
+
+            if (iteration >= WARMUP) {
+                times.add(elapsed)
+                allocations.add(allocated)
+            }
+            activationView.cleanup()
+            idle()
+        }
+        return Result(times.sorted()[ITERATIONS / 2] / 1_000_000.0, allocations.sorted()[ITERATIONS / 2] / 1024)
+    }
+
+    private fun checkBaseline(results: Map<String, Result>) {
+        val file = File(System.getProperty(BASELINE_PROPERTY) ?: "render-baseline.properties")
+        val baseline = Properties()
+
+        if (System.getProperty(UPDATE_PROPERTY).toBoolean()) {
+            results.forEach { (name, result) ->
+                baseline.setProperty("$name.ms", "%.2f".format(result.millis))
+                baseline.setProperty("$name.allocatedKb", result.allocatedKb.toString())
+            }
+            file.outputStream().use { baseline.store(it, "Render benchmark baseline, see RenderBenchmarkTest") }
+            println("Recorded render baseline in $file")
+            return
+        }
+
+        if (!file.exists()) {
+            fail("No render baseline at $file. $RECORD_HINT")
+        }
+        file.inputStream().use { baseline.load(it) }
+
+        val regressions = results.flatMap { (name, result) ->
+            val timeLimit = baseline.getProperty("$name.ms")?.toDouble()
+            val allocationLimit = baseline.getProperty("$name.allocatedKb")?.toLong()
+            if (timeLimit == null || allocationLimit == null) {
+                return@flatMap listOf("$name has no baseline")
+            }
+            val failures = ArrayList<String>()
+            if (result.millis > timeLimit * TIME_TOLERANCE + TIME_SLACK_MS) {
+                failures.add("$name took %.2f ms, baseline %.2f ms".format(result.millis, timeLimit))
+            }
+            if (result.allocatedKb > allocationLimit * ALLOCATION_TOLERANCE) {
+                failures.add("$name allocated ${result.allocatedKb} KB, baseline $allocationLimit KB")
+            }
+            failures
+        }
+        assertTrue("Render regressions:\n" + regressions.joinToString("\n") + "\n$RECORD_HINT", regressions.isEmpty())
+    }
+
+    private fun asset(name: String): JSONObject {
+        val stream = javaClass.classLoader!!.getResourceAsStream(name)
+        return JSONObject(stream.bufferedReader().use { it.readText() })
+    }
+
+    private fun allocatedBytes(): Long {
+        val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        return threads.getThreadAllocatedBytes(Thread.currentThread().id)
+    }
+
+    // idle() alone runs what is due now; the clock has to move for the next frame to lay out
+    private fun idle() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FRAMES_MS))
+    }
+
+    companion object {
+        private const val WARMUP = 5
+        private const val ITERATIONS = 15
+
+        // A few frames, enough for the work queued by a call and the layout pass after it
+        private const val FRAMES_MS = 100L
+
+        // Wall time on shared runners is noisy, allocations much less so
+        private const val TIME_TOLERANCE = 1.5
+        private const val TIME_SLACK_MS = 2.0
+        private const val ALLOCATION_TOLERANCE = 1.2
+
+        private const val BASELINE_PROPERTY = "sourcesync.renderBaseline"
+        private const val UPDATE_PROPERTY = "sourcesync.updateRenderBaseline"
+        private const val RECORD_HINT = "If intended, record the baseline on the CI machine with " +
+            "./gradlew :sourcesync-sdk-ui:testDebugUnitTest -PupdateRenderBaseline and commit " +
+            "sourcesync-sdk-ui/render-baseline.properties."
+    }
+}
@@ -0,0 +1,126 @@
+package io.sourcesync.sdk.ui.divkit
+
+import android.app.Activity
+import android.os.Looper
+import android.widget.FrameLayout
+import androidx.leanback.widget.ArrayObjectAdapter
+import io.sourcesync.sdk.ui.utils.ActivationDataCache
+import io.sourcesync.sdk.ui.utils.DeferredCleanup
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.time.Duration
+
+/**
+ * Binding of [ActivationCardPresenter] holders outside a Leanback row.
+ */
+@RunWith(RobolectricTestRunner::class)
+class ActivationCardPresenterTest {
+    private lateinit var parent: FrameLayout
+    private lateinit var presenter: ActivationCardPresenter
+
+    @Before
+    fun setUp() {
+        ActivationDataCache.clear()
+        val activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        parent = FrameLayout(activity)
+        activity.setContentView(parent, FrameLayout.LayoutParams(1920, 1080))
+        presenter = ActivationCardPresenter(CARD_WIDTH, CARD_HEIGHT, prefetchDistance = 1)
+    }
+
+    @After
+    fun tearDown() {
+        presenter.release()
+        DeferredCleanup.flush()
+        ActivationDataCache.clear()
+    }
+
+    @Test
+    fun rebindingSameEnvelopeSkipsBinding() {
+        val envelope = card("a")
+        val holder = newHolder()
+        presenter.onBindViewHolder(holder, envelope)
+        val data = holder.divView.divData
+        assertNotNull(data)
+
+        // Binding again would parse again
+        ActivationDataCache.clear()
+        presenter.onBindViewHolder(holder, JSONObject(envelope.toString()))
+
+        assertNull(ActivationDataCache.get(envelope))
+        assertSame(data, holder.divView.divData)
+    }
+
+    @Test
+    fun rebindingOtherEnvelopeBinds() {
+        val holder = newHolder()
+        presenter.onBindViewHolder(holder, card("a"))
+
+        presenter.onBindViewHolder(holder, card("b"))
+
+        assertEquals("b", holder.divView.divData?.logId)
+    }
+
+    @Test
+    fun neighbourBindsToPreboundView() {
+        val adapter = ArrayObjectAdapter().apply {
+            add(card("a"))
+            add(card("b"))
+            add(card("c"))
+        }
+        val focused = newHolder()
+        presenter.onBindViewHolder(focused, adapter.get(1))
+
+        presenter.prefetchAround(adapter, 1)
+        awaitPrebound(2)
+
+        val holder = newHolder()
+        val own = holder.divView
+        presenter.onBindViewHolder(holder, adapter.get(2))
+
+        assertNotSame(own, holder.divView)
+        assertSame(holder.view, holder.divView.parent)
+        assertEquals("c", holder.divView.divData?.logId)
+        assertEquals(1, presenter.preboundCount)
+    }
+
+    private fun newHolder(): ActivationCardPresenter.CardViewHolder {
+        return presenter.onCreateViewHolder(parent) as ActivationCardPresenter.CardViewHolder
+    }
+
+    private fun card(logId: String): JSONObject {
+        val div = JSONObject().put("type", "text").put("text", logId)
+        return JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject()
+                .put("log_id", logId)
+                .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", div))))
+    }
+
+    // Parsing runs on a background dispatcher, binding in idle frames on the main looper
+    private fun awaitPrebound(count: Int) {
+        val deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MS
+        while (presenter.preboundCount < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100))
+        }
+        assertEquals(count, presenter.preboundCount)
+    }
+
+    companion object {
+        private const val AWAIT_TIMEOUT_MS = 5_000L
+        private const val CARD_WIDTH = 400
+        private const val CARD_HEIGHT = 300
+    }
+}
@@ -0,0 +1,233 @@
+package io.sourcesync.sdk.ui.divkit
+
+import android.app.Activity
+import android.os.Looper
+import android.widget.FrameLayout
+import android.widget.ImageView
+import androidx.core.view.children
+import com.yandex.div.core.view2.Div2View
+import io.sourcesync.sdk.ui.utils.SnapshotCache
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.launch
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.time.Duration
+
+/**
+ * [ActivationView] with the demo envelopes on a paused main looper, so tests decide when
+ * frames and posted work run.
+ */
+@RunWith(RobolectricTestRunner::class)
+class ActivationViewTest {
+    private lateinit var activity: Activity
+    private lateinit var activationView: ActivationView
+    private lateinit var scope: CoroutineScope
+
+    @Before
+    fun setUp() {
+        // Immediate, so a request starts, and cancels older ones, as soon as it is launched
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Main.immediate)
+        SnapshotCache.clear()
+        activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        activationView = ActivationView(activity)
+        activity.setContentView(activationView, FrameLayout.LayoutParams(1920, 1080))
+        frames()
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        activationView.cleanup()
+        frames()
+    }
+
+    @Test
+    fun onlyLatestOfOverlappingShowsBinds() {
+        val first = scope.launch { activationView.show(preview("first")) {} }
+        val second = scope.launch { activationView.show(preview("second")) {} }
+
+        awaitOnMain(first, second)
+
+        assertTrue(first.isCancelled)
+        assertEquals(listOf("second"), previews().map { logIdOf(it) })
+    }
+
+    @Test
+    fun supersededShowThrowsCancellationException() {
+        var thrown: Throwable? = null
+        val first = scope.launch {
+            try {
+                activationView.show(preview("first")) {}
+            } catch (e: CancellationException) {
+                thrown = e
+                throw e
+            }
+        }
+        val second = scope.launch { activationView.show(preview("second")) {} }
+
+        awaitOnMain(first, second)
+
+        assertTrue(thrown is CancellationException)
+    }
+
+    @Test
+    fun newerShowDetailsCancelsOlderOne() {
+        var thrown: Throwable? = null
+        val first = scope.launch {
+            try {
+                activationView.showDetails(asset("div_details.json"), 1f, 1f, null)
+            } catch (e: CancellationException) {
+                thrown = e
+                throw e
+            }
+        }
+        val second = scope.launch { activationView.showDetails(asset("sample.json"), 1f, 1f, null) }
+
+        awaitOnMain(first, second)
+
+        assertTrue(thrown is CancellationException)
+        assertEquals(1, activationView.children.filterIsInstance<ActivationDetails>().count())
+    }
+
+    @Test
+    fun showLatestBindsOnlyLastPreview() {
+        val collecting = activationView.showLatest(flowOf(preview("first"), preview("second"))) {}
+
+        awaitOnMain(collecting)
+
+        assertEquals(listOf("second"), previews().map { logIdOf(it) })
+    }
+
+    @Test
+    fun cleanupCancelsPendingRequests() {
+        var thrown: Throwable? = null
+        val preview = scope.launch { activationView.show(preview("first")) {} }
+        val details = scope.launch {
+            try {
+                activationView.showDetails(asset("div_details.json"), 1f, 1f, null)
+            } catch (e: CancellationException) {
+                thrown = e
+                throw e
+            }
+        }
+
+        activationView.cleanup()
+        awaitOnMain(preview, details)
+
+        assertTrue(preview.isCancelled)
+        assertTrue(details.isCancelled)
+        assertTrue(thrown is CancellationException)
+        assertTrue(previews().isEmpty())
+        assertTrue(activationView.children.none { it is ActivationDetails })
+    }
+
+    @Test
+    fun snapshotIsDrawnBeforePreviewIsBoundAgain() {
+        activationView.previewRetention = PreviewRetention.SNAPSHOT
+        activationView.showPreview(asset("div_preview.json"), 0.3f, 0.2f) {
+            activationView.showDetail(asset("div_details.json"), 1f, 1f, null)
+        }
+        frames()
+        previews().single().performClick()
+        frames()
+        assertTrue(previews().isEmpty())
+
+        activationView.hideDetails()
+
+        // Only the snapshot is added; binding waits for the frame that draws it
+        assertTrue(previews().isEmpty())
+        assertEquals(1, covers().size)
+
+        frames()
+        assertEquals(1, previews().size)
+
+        // Covers the preview until its images have loaded, a second at most
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(2))
+        assertTrue(covers().isEmpty())
+        assertEquals(1, previews().size)
+    }
+
+    @Test
+    fun keptPreviewShownAgainStartsFromSnapshot() {
+        assertEquals(PreviewRetention.KEEP_LIVE, activationView.previewRetention)
+        // Text only, so the image loader is idle once it is drawn
+        val envelope = textPreview("kept")
+        activationView.showPreview(envelope, 0.3f, 0.2f) {}
+        frames()
+        assertTrue(covers().isEmpty())
+
+        activationView.cleanup()
+        frames()
+        activationView.showPreview(envelope, 0.3f, 0.2f) {}
+
+        assertTrue(previews().isEmpty())
+        assertEquals(1, covers().size)
+
+        frames()
+        assertEquals(1, previews().size)
+    }
+
+    private fun preview(logId: String): JSONObject {
+        val envelope = asset("div_preview.json")
+        envelope.getJSONObject("card").put("log_id", logId)
+        return envelope
+    }
+
+    private fun textPreview(logId: String): JSONObject {
+        val div = JSONObject().put("type", "text").put("text", logId)
+        return JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject()
+                .put("log_id", logId)
+                .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", div))))
+    }
+
+    private fun logIdOf(preview: ActivationPreview): String? {
+        val divView = preview.children.filterIsInstance<Div2View>().singleOrNull()
+        return divView?.divData?.logId
+    }
+
+    // Parsing runs on a background dispatcher and resumes on the main looper
+    private fun awaitOnMain(vararg jobs: Job) {
+        val deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MS
+        while (jobs.any { !it.isCompleted } && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+            shadowOf(Looper.getMainLooper()).idle()
+        }
+        assertNull(jobs.firstOrNull { !it.isCompleted })
+    }
+
+    private fun previews(): List<ActivationPreview> = activationView.children.filterIsInstance<ActivationPreview>().toList()
+
+    private fun covers(): List<ImageView> = activationView.children.filterIsInstance<ImageView>().toList()
+
+    private fun asset(name: String): JSONObject {
+        val stream = javaClass.classLoader!!.getResourceAsStream(name)
+        return JSONObject(stream.bufferedReader().use { it.readText() })
+    }
+
+    // Runs a few frames and everything posted for them
+    private fun frames() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100))
+    }
+
+    companion object {
+        private const val AWAIT_TIMEOUT_MS = 5_000L
+    }
+}
@@ -0,0 +1,204 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.os.Looper
+import io.sourcesync.sdk.core.ActivationSchedule
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.shadows.ShadowLog
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Queueing of [ActivationPrefetcher] against a local [MockWebServer]. Fetches run on a paused
+ * main looper; SystemClock only moves when the test idles it for a while.
+ */
+@RunWith(RobolectricTestRunner::class)
+class ActivationPrefetcherTest {
+    private lateinit var server: MockWebServer
+    private lateinit var prefetcher: ActivationPrefetcher
+    private val blocked = CountDownLatch(1)
+    private val failures = HashMap<String, Int>()
+
+    @Before
+    fun setUp() {
+        ShadowLog.clear()
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val path = request.path!!
+                if (path == BLOCKED_PATH) {
+                    blocked.await(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                }
+                synchronized(failures) {
+                    val left = failures[path] ?: 0
+                    if (left > 0) {
+                        failures[path] = left - 1
+                        return MockResponse().setResponseCode(503)
+                    }
+                }
+                return if (path == IMAGE_PATH) {
+                    MockResponse()
+                        .setHeader("Content-Type", "image/png")
+                        .setHeader("Cache-Control", "max-age=60")
+                        .setBody(Buffer().write(ByteArray(IMAGE_BYTES)))
+                } else {
+                    envelopeResponse(path)
+                }
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        blocked.countDown()
+        if (::prefetcher.isInitialized) {
+            prefetcher.release()
+        }
+        server.shutdown()
+    }
+
+    @Test
+    fun detectsSeeksButNotPlayback() {
+        prefetcher = ActivationPrefetcher(RuntimeEnvironment.getApplication(), ActivationSchedule(emptyList()))
+
+        prefetcher.onPosition(0)
+        advanceClock(1_000)
+        prefetcher.onPosition(1_000)
+        advanceClock(1_000)
+        prefetcher.onPosition(60_000)
+        prefetcher.onPosition(30_000)
+
+        val seeks = ShadowLog.getLogsForTag("ActivationPrefetcher").map { it.msg }.filter { it.startsWith("Seek to") }
+        assertEquals(listOf("Seek to 60000ms, 0 fetches kept", "Seek to 30000ms, 0 fetches kept"), seeks)
+    }
+
+    @Test
+    fun requeuesFromNewPositionAfterSeek() {
+        prefetcher = prefetcher(
+            ActivationSchedule.Cue(0, 1_000_000, url(BLOCKED_PATH)),
+            ActivationSchedule.Cue(25_000, 30_000, url("/b.json")),
+            ActivationSchedule.Cue(50_000, 60_000, url("/c.json"))
+        )
+
+        // One at a time: the first blocks the queue while the position jumps back
+        prefetcher.onPosition(40_000)
+        idleMain()
+        assertEquals(BLOCKED_PATH, server.takeRequest(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)?.path)
+        prefetcher.onPosition(20_000)
+        blocked.countDown()
+        awaitFetches()
+
+        val rest = List(server.requestCount - 1) { server.takeRequest().path }
+        assertEquals(listOf("/b.json", "/c.json"), rest)
+    }
+
+    @Test
+    fun retriesFailedFetchAfterDelay() {
+        synchronized(failures) { failures["/retry.json"] = 1 }
+        prefetcher = prefetcher(ActivationSchedule.Cue(10_000, 20_000, url("/retry.json")))
+
+        prefetcher.onPosition(0)
+        awaitFetches()
+        prefetcher.onPosition(0)
+        awaitFetches()
+        assertEquals(1, server.requestCount)
+
+        advanceClock(ActivationPrefetcher.RETRY_DELAY_MS)
+        prefetcher.onPosition(0)
+        awaitFetches()
+        assertEquals(2, server.requestCount)
+
+        // Fetched now, so staying in the window costs nothing more
+        advanceClock(ActivationPrefetcher.RETRY_DELAY_MS)
+        prefetcher.onPosition(0)
+        awaitFetches()
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun throttlesDownloadsToBudget() {
+        prefetcher = prefetcher(ActivationSchedule.Cue(10_000, 20_000, url("/image.json")), bytesPerSecond = BUDGET)
+
+        val start = System.nanoTime()
+        prefetcher.onPosition(0)
+        awaitFetches()
+        val elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        assertEquals(2, server.requestCount)
+        // The throttler lets the first 256 KiB through at once, the rest takes a second
+        assertTrue("took ${elapsedMs}ms", elapsedMs >= 800)
+    }
+
+    private fun prefetcher(
+        vararg cues: ActivationSchedule.Cue<String>,
+        bytesPerSecond: Long = 0
+    ): ActivationPrefetcher = ActivationPrefetcher(
+        RuntimeEnvironment.getApplication(),
+        ActivationSchedule(cues.toList()),
+        lookAheadMs = 60_000,
+        bytesPerSecond = bytesPerSecond,
+        maxConcurrent = 1
+    )
+
+    private fun url(path: String) = server.url(path).toString()
+
+    private fun envelopeResponse(path: String): MockResponse {
+        val items = JSONArray().put(JSONObject().put("type", "text").put("text", path))
+        if (path == "/image.json") {
+            items.put(JSONObject().put("type", "image").put("image_url", url(IMAGE_PATH)))
+        }
+        val div = JSONObject().put("type", "container").put("items", items)
+        val envelope = JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject()
+                .put("log_id", path)
+                .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", div))))
+        return MockResponse()
+            .setHeader("Content-Type", "application/json")
+            .setHeader("Cache-Control", "max-age=60")
+            .setBody(envelope.toString())
+    }
+
+    private fun idleMain() {
+        shadowOf(Looper.getMainLooper()).idle()
+    }
+
+    private fun advanceClock(millis: Long) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis))
+    }
+
+    // Fetches run on background dispatchers and finish on the main looper
+    private fun awaitFetches() {
+        val deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MS
+        idleMain()
+        while (prefetcher.pendingCount > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+            idleMain()
+        }
+        assertEquals(0, prefetcher.pendingCount)
+    }
+
+    companion object {
+        private const val AWAIT_TIMEOUT_MS = 5_000L
+        private const val BLOCKED_PATH = "/a.json"
+        private const val IMAGE_PATH = "/image.png"
+        private const val IMAGE_BYTES = 768 * 1024
+        private const val BUDGET = 512 * 1024L
+    }
+}
@@ -0,0 +1,101 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.content.res.AssetFileDescriptor
+import android.os.ParcelFileDescriptor
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.FileNotFoundException
+import java.io.InputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * [AssetEnvelopes.read] with assets laid out like in an APK: uncompressed ones are a range of a
+ * larger file behind a file descriptor, compressed ones can only be streamed.
+ */
+@RunWith(RobolectricTestRunner::class)
+class AssetEnvelopesTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun readsUncompressedAssetThroughDescriptor() {
+        val envelope = asset("div_details.json")
+        val bytes = envelope.toString().toByteArray()
+
+        val read = AssetEnvelopes.read("div_details.json", { descriptor(bytes) }, ::notStreamed)
+
+        assertEquals(envelope.toString(), read.toString())
+    }
+
+    @Test
+    fun readsGzipUnderPlainName() {
+        val envelope = asset("div_preview.json")
+
+        val read = AssetEnvelopes.read("div_preview.json", { descriptor(gzip(envelope.toString())) }, ::notStreamed)
+
+        assertEquals(envelope.toString(), read.toString())
+    }
+
+    @Test
+    fun streamsAssetsStoredCompressed() {
+        val envelope = asset("div_preview.json")
+        val opened = ArrayList<String>()
+
+        val read = AssetEnvelopes.read(
+            "div_preview.json.gz",
+            { throw FileNotFoundException("This file can not be opened as a file descriptor; it is probably compressed") },
+            { path ->
+                opened.add(path)
+                ByteArrayInputStream(gzip(envelope.toString()))
+            }
+        )
+
+        assertEquals(envelope.toString(), read.toString())
+        assertEquals(listOf("div_preview.json.gz"), opened)
+    }
+
+    @Test(expected = FileNotFoundException::class)
+    fun reportsMissingAsset() {
+        AssetEnvelopes.read(
+            "missing.json",
+            { throw FileNotFoundException(it) },
+            { throw FileNotFoundException(it) }
+        )
+    }
+
+    // The asset sits between other entries of the file, like in an APK
+    private fun descriptor(content: ByteArray): AssetFileDescriptor {
+        val file = folder.newFile()
+        file.writeBytes(PADDING + content + PADDING)
+        val fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY)
+        return AssetFileDescriptor(fd, PADDING.size.toLong(), content.size.toLong())
+    }
+
+    private fun notStreamed(path: String): InputStream {
+        fail("$path was streamed, not read through its descriptor")
+        throw AssertionError()
+    }
+
+    private fun gzip(text: String): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        GZIPOutputStream(bytes).use { it.write(text.toByteArray()) }
+        return bytes.toByteArray()
+    }
+
+    private fun asset(name: String): JSONObject {
+        val stream = javaClass.classLoader!!.getResourceAsStream(name)
+        return JSONObject(stream.bufferedReader().use { it.readText() })
+    }
+
+    companion object {
+        private val PADDING = "PK\u0003\u0004 other entries ".toByteArray()
+    }
+}
@@ -0,0 +1,122 @@
+package io.sourcesync.sdk.ui.utils
+
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * HTTP caching of [EnvelopeRepository] against a local [MockWebServer] standing in for the CDN.
+ * Each test uses its own server port, so cache entries of other tests never match.
+ */
+@RunWith(RobolectricTestRunner::class)
+class EnvelopeRepositoryTest {
+    private lateinit var server: MockWebServer
+    private lateinit var repository: EnvelopeRepository
+    private lateinit var url: String
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        url = server.url("/activations/1.json").toString()
+        repository = EnvelopeRepository(RuntimeEnvironment.getApplication())
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun servesFreshEnvelopeFromCache() = runBlocking {
+        server.enqueue(envelopeResponse("v1", "max-age=60"))
+
+        val first = repository.envelope(url)
+        val second = repository.envelope(url)
+
+        assertSame(first, second)
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun revalidatesStaleEnvelopeInBackground() = runBlocking {
+        server.enqueue(envelopeResponse("v1", "max-age=0, stale-while-revalidate=60").setHeader("Age", "1"))
+        server.enqueue(MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""))
+
+        val first = repository.envelope(url)
+        val stale = repository.envelope(url)
+        server.takeRequest()
+        val revalidation = server.takeRequest(5, TimeUnit.SECONDS)
+
+        assertSame(first, stale)
+        assertEquals("\"v1\"", revalidation?.getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun reportsEnvelopeChangedDuringRevalidation() = runBlocking {
+        server.enqueue(envelopeResponse("v1", "max-age=0, stale-while-revalidate=60").setHeader("Age", "1"))
+        server.enqueue(envelopeResponse("v2", "max-age=60"))
+        val changed = CountDownLatch(1)
+        repository.onUpdated = { _, _ -> changed.countDown() }
+
+        repository.envelope(url)
+        val stale = repository.envelope(url)
+        assertTrue(changed.await(5, TimeUnit.SECONDS))
+        val fresh = repository.envelope(url)
+
+        assertEquals("v1", versionOf(stale))
+        assertEquals("v2", versionOf(fresh))
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun fetchesBeforeReturningPastTheStaleWindow() = runBlocking {
+        server.enqueue(envelopeResponse("v1", "max-age=0, stale-while-revalidate=0").setHeader("Age", "1"))
+        server.enqueue(MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""))
+
+        val first = repository.envelope(url)
+        val revalidated = repository.envelope(url)
+
+        assertSame(first, revalidated)
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun servesStaleCopyWhenTheNetworkFails() = runBlocking {
+        server.enqueue(envelopeResponse("v1", "max-age=0, stale-while-revalidate=0").setHeader("Age", "1"))
+        server.enqueue(MockResponse().setResponseCode(503))
+
+        val first = repository.envelope(url)
+        val fallback = repository.envelope(url)
+
+        assertSame(first, fallback)
+    }
+
+    private fun envelopeResponse(version: String, cacheControl: String): MockResponse {
+        val envelope = JSONObject()
+            .put("templates", JSONObject())
+            .put("card", JSONObject().put("log_id", "activation_$version").put("states", JSONArray()))
+        return MockResponse()
+            .setHeader("Content-Type", "application/json")
+            .setHeader("Cache-Control", cacheControl)
+            .setHeader("ETag", "\"$version\"")
+            .setBody(envelope.toString())
+    }
+
+    private fun versionOf(envelope: JSONObject): String {
+        return envelope.getJSONObject("card").getString("log_id").removePrefix("activation_")
+    }
+}
@@ -0,0 +1,138 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.os.Looper
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.time.Duration
+
+/**
+ * Frame budget and queueing of [FrameScheduler] on a paused main looper. Frames only run when
+ * the test advances the looper clock.
+ */
+@RunWith(RobolectricTestRunner::class)
+class FrameSchedulerTest {
+    private lateinit var scope: CoroutineScope
+    private val ran = ArrayList<String>()
+
+    @Before
+    fun setUp() {
+        // Immediate, so launch runs up to the first suspension without idling the looper
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Main.immediate)
+        frames(10)
+    }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+        FrameScheduler.budgetFraction = 0.4f
+        frames(10)
+    }
+
+    @Test
+    fun runsQueuedWorkAfterFrame() {
+        FrameScheduler.post("task") { ran.add("task") }
+        assertTrue(ran.isEmpty())
+
+        frames(1)
+        assertEquals(listOf("task"), ran)
+        assertEquals(0, FrameScheduler.pendingCount)
+    }
+
+    @Test
+    fun carriesWorkOverBudgetToLaterFrames() {
+        // Each task alone uses up the budget of a frame
+        repeat(3) { index ->
+            FrameScheduler.post("task$index") {
+                spin(FRAME_NANOS)
+                ran.add("task$index")
+            }
+        }
+
+        frames(1)
+        assertTrue("ran ${ran.size} tasks in one frame", ran.size <= 1)
+        assertTrue(FrameScheduler.pendingCount >= 2)
+
+        frames(10)
+        assertEquals(listOf("task0", "task1", "task2"), ran)
+        assertEquals(0, FrameScheduler.pendingCount)
+    }
+
+    @Test
+    fun runsIdleWorkAfterNormalWork() {
+        FrameScheduler.post("idle", FrameScheduler.Priority.IDLE) { ran.add("idle") }
+        FrameScheduler.post("normal") { ran.add("normal") }
+
+        frames(5)
+
+        assertEquals(listOf("normal", "idle"), ran)
+    }
+
+    @Test
+    fun cancelledHandleSkipsTask() {
+        val handle = FrameScheduler.post("task") { ran.add("task") }
+
+        handle.cancel()
+        frames(5)
+
+        assertTrue(ran.isEmpty())
+        assertEquals(0, FrameScheduler.pendingCount)
+    }
+
+    @Test
+    fun cancellingCallerSkipsActionOfRunInFrame() {
+        val job = scope.launch {
+            FrameScheduler.runInFrame("task") { ran.add("task") }
+        }
+        assertEquals(1, FrameScheduler.pendingCount)
+
+        job.cancel()
+
+        // Cancelled on the main thread, so the task is gone before the next frame
+        assertEquals(0, FrameScheduler.pendingCount)
+        frames(5)
+        assertTrue(ran.isEmpty())
+    }
+
+    @Test
+    fun runInFrameReturnsResultOfAction() {
+        var result: String? = null
+        scope.launch {
+            result = FrameScheduler.runInFrame("task") { "built" }
+        }
+
+        frames(5)
+
+        assertEquals("built", result)
+    }
+
+    private fun spin(nanos: Long) {
+        val end = System.nanoTime() + nanos
+        while (System.nanoTime() < end) {
+            // Busy, like a bind
+        }
+    }
+
+    // The budget is metered on the real clock, so frames are spaced in real time as well
+    private fun frames(count: Int) {
+        repeat(count) {
+            Thread.sleep(FRAME_MILLIS)
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FRAME_MILLIS))
+        }
+    }
+
+    companion object {
+        private const val FRAME_MILLIS = 17L
+        private const val FRAME_NANOS = FRAME_MILLIS * 1_000_000
+    }
+}
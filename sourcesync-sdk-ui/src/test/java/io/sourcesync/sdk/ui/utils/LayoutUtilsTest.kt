@@ -0,0 +1,115 @@
+package io.sourcesync.sdk.ui.utils
+
+import io.sourcesync.sdk.ui.utils.LayoutUtils.asTemplateAndCardParsed
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * [LayoutUtils.mergeAsStates] with the demo envelopes. `sample.json` has like buttons whose
+ * actions address its root state, `div-action://set_state?state_id=0/card0.likes/liked`.
+ */
+@RunWith(RobolectricTestRunner::class)
+class LayoutUtilsTest {
+
+    @Test
+    fun renumbersRootStateActionsOfDetails() {
+        val details = asset("sample.json")
+        val original = details.toString()
+
+        val merged = LayoutUtils.mergeAsStates(asset("div_preview.json"), details, 0, 1)
+
+        assertNotNull(merged)
+        val values = strings(merged!!)
+        assertFalse(values.any { it.startsWith("div-action://set_state?state_id=0/") })
+        assertTrue(values.contains("div-action://set_state?state_id=1/card0.likes/liked"))
+        assertTrue(values.contains("div-action://set_state?state_id=1/cup.likes/disliked"))
+        assertEquals(original, details.toString())
+        merged.asTemplateAndCardParsed()
+    }
+
+    @Test
+    fun keepsVariablesAndTimersOfDetails() {
+        val merged = LayoutUtils.mergeAsStates(asset("div_preview.json"), asset("sample.json"), 0, 1)!!
+
+        val card = merged.getJSONObject("card")
+        assertEquals(listOf(0L, 1L), ids(card.getJSONArray("states"), "state_id").map { it.toLong() })
+        assertTrue(ids(card.getJSONArray("variables"), "name").contains("card0.likes"))
+        assertEquals(listOf("like_timer"), ids(card.getJSONArray("timers"), "id"))
+    }
+
+    @Test
+    fun renumbersTypedSetStateActions() {
+        val details = envelope(
+            JSONObject().put("type", "text").put("text", "Like").put(
+                "actions", JSONArray().put(
+                    JSONObject().put("log_id", "like").put(
+                        "typed", JSONObject().put("type", "set_state").put("state_id", "0/likes/liked")
+                    )
+                )
+            )
+        )
+
+        val merged = LayoutUtils.mergeAsStates(asset("div_preview.json"), details, 0, 1)!!
+
+        assertTrue(strings(merged).contains("1/likes/liked"))
+    }
+
+    @Test
+    fun refusesCardsWithSeveralStates() {
+        val details = asset("div_details.json")
+        val states = details.getJSONObject("card").getJSONArray("states")
+        states.put(JSONObject(states.getJSONObject(0).toString()).put("state_id", 7))
+
+        assertNull(LayoutUtils.mergeAsStates(asset("div_preview.json"), details, 0, 1))
+    }
+
+    @Test
+    fun refusesCardFieldsItCantMerge() {
+        val details = asset("sample.json")
+        details.getJSONObject("card").put("variable_triggers", JSONArray())
+
+        assertNull(LayoutUtils.mergeAsStates(asset("div_preview.json"), details, 0, 1))
+    }
+
+    @Test
+    fun refusesTemplatesThatAddressRootState() {
+        val details = asset("div_details.json")
+        details.getJSONObject("templates").put(
+            "like_button", JSONObject()
+                .put("type", "text")
+                .put("action", JSONObject().put("log_id", "like").put("url", "div-action://set_state?state_id=0/likes/liked"))
+        )
+
+        assertNull(LayoutUtils.mergeAsStates(asset("div_preview.json"), details, 0, 1))
+    }
+
+    private fun envelope(div: JSONObject): JSONObject = JSONObject().put(
+        "card", JSONObject()
+            .put("log_id", "details")
+            .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", div)))
+    )
+
+    // All string values in the tree; toString() escapes the slashes of URLs
+    private fun strings(value: Any): List<String> = when (value) {
+        is JSONObject -> value.keys().asSequence().flatMap { strings(value.get(it)) }.toList()
+        is JSONArray -> (0 until value.length()).flatMap { strings(value.get(it)) }
+        is String -> listOf(value)
+        else -> emptyList()
+    }
+
+    private fun ids(array: JSONArray, key: String): List<String> =
+        (0 until array.length()).map { array.getJSONObject(it).getString(key) }
+
+    private fun asset(name: String): JSONObject {
+        val stream = javaClass.classLoader!!.getResourceAsStream(name)
+        return JSONObject(stream.bufferedReader().use { it.readText() })
+    }
+}
@@ -0,0 +1,234 @@
+package io.sourcesync.sdk.ui.utils
+
+import android.app.Activity
+import android.os.Looper
+import android.view.ContextThemeWrapper
+import android.view.View
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import androidx.core.view.children
+import androidx.recyclerview.widget.RecyclerView
+import com.yandex.div.DivDataTag
+import com.yandex.div.core.Div2Context
+import com.yandex.div.core.DivActionHandler
+import com.yandex.div.core.DivConfiguration
+import com.yandex.div.core.DivViewFacade
+import com.yandex.div.core.view2.Div2View
+import com.yandex.div.json.expressions.ExpressionResolver
+import com.yandex.div2.DivAction
+import io.sourcesync.sdk.ui.divkit.ActivationView
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import java.lang.ref.WeakReference
+import java.time.Duration
+
+/**
+ * Gallery holders handed back to [SharedViewPool] when details close.
+ */
+@RunWith(RobolectricTestRunner::class)
+class SharedViewPoolTest {
+    private lateinit var activity: Activity
+    private lateinit var activationView: ActivationView
+
+    @Before
+    fun setUp() {
+        activity = Robolectric.buildActivity(Activity::class.java).setup().get()
+        activationView = ActivationView(activity)
+        activity.setContentView(activationView, FrameLayout.LayoutParams(1920, 1080))
+        frames()
+        SharedViewPool.trimMemory(ResourceManager.Pressure.HIGH)
+    }
+
+    @After
+    fun tearDown() {
+        activationView.cleanup()
+        DeferredCleanup.flush()
+        SharedViewPool.trimMemory(ResourceManager.Pressure.HIGH)
+    }
+
+    @Test
+    fun closingDetailsReturnsGalleryHolders() {
+        activationView.showPreview(asset("div_preview.json")) {}
+        activationView.showDetail(asset("div_details.json"), 1f, 1f, null)
+        frames()
+
+        activationView.hideDetails()
+        DeferredCleanup.flush()
+
+        assertTrue(SharedViewPool.holderCount > 0)
+    }
+
+    @Test
+    fun closingDetailsReturnsHoldersOfNestedGalleries() {
+        activationView.showPreview(asset("div_preview.json")) {}
+        activationView.showDetail(nestedGalleries(rows = 3, columns = 3), 1f, 1f, null)
+        frames()
+
+        activationView.hideDetails()
+        DeferredCleanup.flush()
+
+        // The rows alone would leave three
+        assertTrue("${SharedViewPool.holderCount} holders", SharedViewPool.holderCount > 3)
+    }
+
+    @Test
+    fun leavingDetailsStateReturnsGalleryHolders() {
+        val details = asset("div_details.json")
+        activationView.showPreviewWithDetail(asset("div_preview.json"), details) {}
+        frames()
+        activationView.showDetail(details, 1f, 1f, null)
+        frames()
+
+        activationView.hideDetails()
+
+        assertTrue(SharedViewPool.holderCount > 0)
+    }
+
+    @Test
+    fun reusedHoldersBelongToNewDivView() {
+        val taps = ArrayList<DivViewFacade>()
+        val divContext = divContext(taps)
+        val (released, pooled) = bindAndRelease(divContext)
+        assertTrue(pooled.isNotEmpty())
+
+        val divView = Div2View(divContext)
+        activationView.addView(divView, FrameLayout.LayoutParams(1920, 300))
+        divView.setData(ActivationDataCache.getOrParse(tappableGallery("second")), DivDataTag("second"))
+        SharedViewPool.attach(divView)
+        frames()
+
+        // Holders from the pool render in, and report taps to, the Div2View now showing them
+        val items = galleryOf(divView).children.toList()
+        val reused = items.filter { it in pooled }
+        assertTrue(reused.isNotEmpty())
+        val tappable = descendants(reused.first()).first { it.hasOnClickListeners() }
+        assertTrue(tappable.performClick())
+        assertSame(divView, taps.single())
+
+        // Nothing pooled keeps the released Div2View alive
+        repeat(GC_ATTEMPTS) {
+            if (released.get() != null) {
+                System.gc()
+                Thread.sleep(10)
+            }
+        }
+        assertNull(released.get())
+    }
+
+    private fun nestedGalleries(rows: Int, columns: Int): JSONObject {
+        val items = JSONArray()
+        repeat(rows) { row ->
+            val cells = JSONArray()
+            repeat(columns) { column ->
+                cells.put(
+                    JSONObject()
+                        .put("type", "text")
+                        .put("text", "Item $row.$column")
+                        .put("width", JSONObject().put("type", "fixed").put("value", 200))
+                )
+            }
+            items.put(
+                JSONObject()
+                    .put("type", "gallery")
+                    .put("orientation", "horizontal")
+                    .put("height", JSONObject().put("type", "fixed").put("value", 100))
+                    .put("items", cells)
+            )
+        }
+        val gallery = JSONObject()
+            .put("type", "gallery")
+            .put("orientation", "vertical")
+            .put("height", JSONObject().put("type", "match_parent"))
+            .put("items", items)
+        return JSONObject().put(
+            "card", JSONObject()
+                .put("log_id", "nested_galleries")
+                .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", gallery)))
+        )
+    }
+
+    // Binds a gallery in its own Div2View and releases it, handing its holders to the pool
+    private fun bindAndRelease(divContext: Div2Context): Pair<WeakReference<Div2View>, Set<View>> {
+        val divView = Div2View(divContext)
+        activationView.addView(divView, FrameLayout.LayoutParams(1920, 300))
+        divView.setData(ActivationDataCache.getOrParse(tappableGallery("first")), DivDataTag("first"))
+        SharedViewPool.attach(divView)
+        frames()
+        val items = galleryOf(divView).children.toSet()
+
+        activationView.removeView(divView)
+        LayoutUtils.safeCleanup("SharedViewPoolTest", divView)
+        frames()
+        return WeakReference(divView) to items
+    }
+
+    private fun divContext(taps: MutableList<DivViewFacade>): Div2Context {
+        val configuration = DivConfiguration.Builder(PicassoDivImageLoader(activity))
+            .actionHandler(object : DivActionHandler() {
+                override fun handleAction(action: DivAction, view: DivViewFacade, resolver: ExpressionResolver): Boolean {
+                    taps.add(view)
+                    return true
+                }
+            })
+            .build()
+        return Div2Context(ContextThemeWrapper(activity, activity.applicationInfo.theme), configuration)
+    }
+
+    private fun tappableGallery(logId: String): JSONObject {
+        val items = JSONArray()
+        repeat(GALLERY_ITEMS) { index ->
+            items.put(
+                JSONObject()
+                    .put("type", "text")
+                    .put("text", "$logId $index")
+                    .put("width", JSONObject().put("type", "fixed").put("value", 200))
+                    .put("action", JSONObject().put("log_id", "tap").put("url", "sourcesync-test://tap/$index"))
+            )
+        }
+        val gallery = JSONObject()
+            .put("type", "gallery")
+            .put("orientation", "horizontal")
+            .put("height", JSONObject().put("type", "fixed").put("value", 100))
+            .put("items", items)
+        return JSONObject().put(
+            "card", JSONObject()
+                .put("log_id", logId)
+                .put("states", JSONArray().put(JSONObject().put("state_id", 0).put("div", gallery)))
+        )
+    }
+
+    private fun galleryOf(divView: Div2View): RecyclerView {
+        return descendants(divView).filterIsInstance<RecyclerView>().first()
+    }
+
+    private fun descendants(view: View): Sequence<View> = sequence {
+        yield(view)
+        if (view is ViewGroup) {
+            view.children.forEach { yieldAll(descendants(it)) }
+        }
+    }
+
+    private fun asset(name: String): JSONObject {
+        val stream = javaClass.classLoader!!.getResourceAsStream(name)
+        return JSONObject(stream.bufferedReader().use { it.readText() })
+    }
+
+    private fun frames() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100))
+    }
+
+    companion object {
+        private const val GALLERY_ITEMS = 6
+        private const val GC_ATTEMPTS = 10
+    }
+}